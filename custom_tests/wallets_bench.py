@@ -0,0 +1,97 @@
+# Side-by-side throughput/latency benchmark of wallet services
+#
+# Replays the traffic the marketplace's PostOrderActor pool sends to the wallets service:
+# every worker repeatedly debits a wallet and refunds it, as an order followed by a cancellation would.
+# Start one wallets instance per mode, e.g.
+#   java -jar wallets.jar --server.port=8082
+#   java -jar wallets.jar --server.port=8084 --spring.profiles.active=virtual
+# and run
+#   python3 wallets_bench.py http://localhost:8082 http://localhost:8084 --workers 50 500
+
+import argparse
+import time
+from concurrent.futures import ThreadPoolExecutor
+
+import requests
+
+# Matches marketplace-app.worker-pools.post-order.initial-workers in the marketplace
+DEFAULT_WORKERS = [50]
+USERS = 1000
+INITIAL_BALANCE = 1000000
+AMOUNT = 10
+
+
+def setup_wallets(url):
+    session = requests.Session()
+    session.delete(f"{url}/wallets")
+    for user_id in range(USERS):
+        session.put(f"{url}/wallets/{user_id}", json={"action": "credit", "amount": INITIAL_BALANCE})
+
+
+def worker(url, worker_id, workers, deadline):
+    session = requests.Session()
+    latencies = []
+    errors = 0
+    user_id = worker_id
+    while time.perf_counter() < deadline:
+        for action in ("debit", "credit"):
+            start = time.perf_counter()
+            try:
+                response = session.put(f"{url}/wallets/{user_id}", json={"action": action, "amount": AMOUNT})
+                if response.status_code != 200:
+                    errors += 1
+            except requests.RequestException:
+                errors += 1
+            latencies.append(time.perf_counter() - start)
+        user_id = (user_id + workers) % USERS
+    return latencies, errors
+
+
+def percentile(sorted_values, p):
+    if not sorted_values:
+        return 0.0
+    index = min(len(sorted_values) - 1, int(p / 100 * len(sorted_values)))
+    return sorted_values[index]
+
+
+def run(url, workers, duration):
+    setup_wallets(url)
+    deadline = time.perf_counter() + duration
+    with ThreadPoolExecutor(max_workers=workers) as executor:
+        futures = [executor.submit(worker, url, i, workers, deadline) for i in range(workers)]
+        results = [future.result() for future in futures]
+
+    latencies = sorted(latency for result in results for latency in result[0])
+    errors = sum(result[1] for result in results)
+    return {
+        "url": url,
+        "workers": workers,
+        "requests": len(latencies),
+        "errors": errors,
+        "throughput": len(latencies) / duration,
+        "p50": percentile(latencies, 50) * 1000,
+        "p99": percentile(latencies, 99) * 1000,
+        "max": (latencies[-1] if latencies else 0.0) * 1000,
+    }
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Wallets service throughput/latency benchmark")
+    parser.add_argument("urls", nargs="+", help="Base URLs of the wallet services to compare")
+    parser.add_argument("--workers", type=int, nargs="+", default=DEFAULT_WORKERS, help="Concurrency levels")
+    parser.add_argument("--duration", type=float, default=30, help="Seconds per run")
+    args = parser.parse_args()
+
+    rows = []
+    for workers in args.workers:
+        for url in args.urls:
+            rows.append(run(url, workers, args.duration))
+
+    print(f"{'url':<28}{'workers':>8}{'req/s':>10}{'p50 ms':>10}{'p99 ms':>10}{'max ms':>10}{'errors':>8}")
+    for row in rows:
+        print(f"{row['url']:<28}{row['workers']:>8}{row['throughput']:>10.1f}"
+              f"{row['p50']:>10.2f}{row['p99']:>10.2f}{row['max']:>10.2f}{row['errors']:>8}")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,52 @@
+package com.keval.pods.jmh;
+
+import com.keval.pods.order.OrderActor;
+import com.keval.pods.product.ProductActor;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.cluster.MemberStatus;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+
+// Actor systems for benchmarks, configured from the marketplace's application.conf
+final class BenchmarkSystems {
+
+    private BenchmarkSystems() {}
+
+    // Non-clustered system, for benchmarks that talk to actors directly
+    static ActorTestKit local(String name) {
+        Config config = ConfigFactory.parseString(
+                "akka.actor.provider = local\n" +
+                "akka.loglevel = WARNING\n")
+            .withFallback(ConfigFactory.load());
+        return ActorTestKit.create(name, config);
+    }
+
+    // Single-node cluster with ProductActor and OrderActor sharding initialized as in Main
+    static ActorTestKit cluster(String name) throws InterruptedException {
+        Config config = ConfigFactory.parseString(
+                "akka.remote.artery.canonical.hostname = 127.0.0.1\n" +
+                "akka.remote.artery.canonical.port = 0\n" +
+                "akka.cluster.seed-nodes = []\n" +
+                "akka.loglevel = WARNING\n")
+            .withFallback(ConfigFactory.load());
+        ActorTestKit testKit = ActorTestKit.create(name, config);
+
+        // Form a cluster of one
+        Cluster cluster = Cluster.get(testKit.system());
+        cluster.manager().tell(Join.create(cluster.selfMember().address()));
+        while (!cluster.selfMember().status().equals(MemberStatus.up()))
+            Thread.sleep(10);
+
+        ClusterSharding sharding = ClusterSharding.get(testKit.system());
+        sharding.init(Entity.of(ProductActor.ENTITY_TYPE_KEY,
+                entityContext -> ProductActor.create(ProductActor.extractProductId(entityContext.getEntityId()))));
+        sharding.init(Entity.of(OrderActor.ENTITY_TYPE_KEY, entityContext -> OrderActor.create(entityContext.getShard(), entityContext.getEntityId())));
+
+        return testKit;
+    }
+}
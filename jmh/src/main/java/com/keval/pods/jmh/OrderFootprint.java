@@ -0,0 +1,64 @@
+package com.keval.pods.jmh;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import com.keval.pods.order.CompactOrder;
+import com.keval.pods.order.Order;
+
+// Heap bytes per resident order, as an OrderActor holds it, for Order and CompactOrder
+// Not a JMH benchmark: run with java -Xmx8g -cp target/benchmarks.jar com.keval.pods.jmh.OrderFootprint [orders]
+public class OrderFootprint {
+
+    private static final int DEFAULT_ORDERS = 10_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ORDERS;
+        System.out.printf("%-14s%14s%20s%n", "representation", "bytes/order", "MiB at " + orders);
+        measure("Order", orders, OrderFootprint::placedOrder);
+        measure("CompactOrder", orders, i -> CompactOrder.of(placedOrder(i)));
+    }
+
+    private static void measure(String name, int orders, IntFunction<Object> create) throws InterruptedException {
+        // The holding array is allocated before the baseline so only the orders themselves are counted
+        Object[] resident = new Object[orders];
+        long before = usedHeapAfterGc();
+        for (int i = 0; i < orders; i++)
+            resident[i] = create.apply(i);
+        long after = usedHeapAfterGc();
+        Reference.reachabilityFence(resident);
+
+        long bytes = after - before;
+        System.out.printf("%-14s%14.1f%20d%n", name, (double) bytes / orders, bytes >> 20);
+    }
+
+    // An order as the saga places it: an unshared order ID, a user among 10k, and one to three items
+    private static Order placedOrder(int i) {
+        Order order = new Order();
+        order.order_id = i;
+        order.user_id = 1 + i % 10_000;
+        order.total_price = 100 + i % 5_000;
+        order.status = Order.STATUS_PLACED;
+
+        List<Order.OrderItem> items = new ArrayList<>();
+        for (int item = 0; item <= i % 3; item++) {
+            Order.OrderItem orderItem = new Order.OrderItem();
+            orderItem.product_id = 101 + (i + item) % 50;
+            orderItem.quantity = 1 + item;
+            items.add(orderItem);
+        }
+        order.items = items;
+        return order;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,98 @@
+package com.keval.pods.jmh;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keval.pods.order.Order;
+import com.keval.pods.order.PostOrderActor;
+import com.keval.pods.product.Product;
+import com.keval.pods.product.ProductActor;
+import com.keval.pods.trace.TraceContext;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+
+// Full order saga in one PostOrderActor: product info, user lookup, debit, stock decrease and order creation
+// Users and Wallets services are stubbed, products and orders are sharded entities on a single-node cluster
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PostOrderSagaBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final int[] PRODUCT_IDS = {101, 102, 103};
+
+    private ActorTestKit testKit;
+    private ActorRef<PostOrderActor.Command> postOrderActor;
+    private int nextOrderId = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        testKit = BenchmarkSystems.cluster("PostOrderSagaBenchmark");
+
+        // Products with enough stock for the whole run
+        ClusterSharding sharding = ClusterSharding.get(testKit.system());
+        for (int productId : PRODUCT_IDS) {
+            Product product = new Product(productId, "Product " + productId, "Benchmark product", 100, Integer.MAX_VALUE);
+            sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + productId)
+                .tell(new ProductActor.InitializeProduct(product));
+        }
+
+        postOrderActor = testKit.spawn(PostOrderActor.create(new StubClients.Users(), new StubClients.Wallets()), "postOrderActor");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    private Order newOrder(int... productIds) {
+        Order order = new Order();
+        order.order_id = nextOrderId++;
+        order.user_id = 1;
+        order.items = new ArrayList<>();
+        for (int productId : productIds) {
+            Order.OrderItem item = new Order.OrderItem();
+            item.product_id = productId;
+            item.quantity = 1;
+            order.items.add(item);
+        }
+        return order;
+    }
+
+    private Order place(Order order) throws Exception {
+        return AskPattern.<PostOrderActor.Command, Order>ask(postOrderActor,
+                ref -> new PostOrderActor.PostOrderRequest(order, ref, TraceContext.NONE), TIMEOUT, testKit.scheduler())
+            .toCompletableFuture()
+            .get();
+    }
+
+    @Benchmark
+    public Order singleItemOrder() throws Exception {
+        return place(newOrder(PRODUCT_IDS[0]));
+    }
+
+    @Benchmark
+    public Order threeItemOrder() throws Exception {
+        return place(newOrder(PRODUCT_IDS));
+    }
+}
@@ -0,0 +1,100 @@
+package com.keval.pods.jmh;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keval.pods.order.PostOrderActor;
+import com.keval.pods.product.Product;
+import com.keval.pods.product.ProductActor;
+import com.keval.pods.product.ProductJson;
+import com.keval.pods.trace.TraceContext;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+
+// Message throughput of a single ProductActor, the serialization point for every order on a product
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProductActorBenchmark {
+
+    private static final int BATCH = 1000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private ActorTestKit testKit;
+    private ActorRef<ProductActor.Command> productActor;
+    // Stands in for the PostOrderActor, counting down the current batch's latch on every reply, bulk replies once per response
+    private ActorRef<PostOrderActor.Command> receiver;
+    private final AtomicReference<CountDownLatch> latch = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        testKit = BenchmarkSystems.local("ProductActorBenchmark");
+        productActor = testKit.spawn(ProductActor.create("101"), ProductActor.IdPrefix + "101");
+        productActor.tell(new ProductActor.InitializeProduct(
+                new Product(101, "Product 101", "Benchmark product", 100, Integer.MAX_VALUE)));
+        receiver = testKit.spawn(Behaviors.receive((context, message) -> {
+            int replies = message instanceof PostOrderActor.DecreaseProductStockResponses batch ? batch.responses().size() : 1;
+            for (int i = 0; i < replies; i++)
+                latch.get().countDown();
+            return Behaviors.same();
+        }), "receiver");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    // Stock decreases pipelined the way concurrent orders arrive, decided in group-committed batches and acknowledged to the saga
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void decreaseStock() throws InterruptedException {
+        CountDownLatch batchLatch = new CountDownLatch(BATCH);
+        latch.set(batchLatch);
+        for (int i = 0; i < BATCH; i++)
+            productActor.tell(new ProductActor.DecreaseProductStock(i, 0, receiver, 1, TraceContext.NONE));
+        batchLatch.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        // Top the stock back up so the run never sells out
+        productActor.tell(new ProductActor.IncreaseProductStock(BATCH));
+    }
+
+    // Request-response round trip with the Product object itself
+    @Benchmark
+    public Product getProductInfo() throws Exception {
+        return AskPattern.<ProductActor.Command, Product>ask(productActor,
+                ProductActor.GetProductInfo::new, TIMEOUT, testKit.scheduler())
+            .toCompletableFuture()
+            .get();
+    }
+
+    // Request-response round trip, as served to GET /products/{id}: the cached JSON bytes
+    @Benchmark
+    public ProductJson getProductJson() throws Exception {
+        return AskPattern.<ProductActor.Command, ProductJson>ask(productActor,
+                ProductActor.GetProductJson::new, TIMEOUT, testKit.scheduler())
+            .toCompletableFuture()
+            .get();
+    }
+}
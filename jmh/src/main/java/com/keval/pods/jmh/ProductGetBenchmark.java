@@ -0,0 +1,85 @@
+package com.keval.pods.jmh;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import com.keval.pods.Gateway;
+import com.keval.pods.Routes;
+import com.keval.pods.order.DeleteOrderActor;
+import com.keval.pods.order.PostOrderActor;
+import com.keval.pods.product.Product;
+import com.keval.pods.product.ProductActor;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.http.javadsl.model.HttpEntity;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.japi.function.Function;
+
+// GET /products/{id} end to end in one JVM: routes, Gateway and the sharded ProductActor
+// Run with the marketplace's default INFO level and with DEBUG to see what per-message logging costs
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class ProductGetBenchmark {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Param({"INFO", "DEBUG"})
+    public String logLevel;
+
+    private ActorTestKit testKit;
+    private Function<HttpRequest, CompletionStage<HttpResponse>> handler;
+    private HttpRequest getProduct;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.keval.pods"))
+                .setLevel(ch.qos.logback.classic.Level.toLevel(logLevel));
+
+        testKit = BenchmarkSystems.cluster("ProductGetBenchmark");
+        ClusterSharding sharding = ClusterSharding.get(testKit.system());
+        sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + 101)
+                .tell(new ProductActor.InitializeProduct(new Product(101, "Product 101", "Benchmark product", 100, 1000)));
+
+        ActorRef<Gateway.Command> gateway = testKit.spawn(Gateway.create(sharding,
+                ServiceKey.create(PostOrderActor.Command.class, "PostOrderActorSK"),
+                ServiceKey.create(DeleteOrderActor.Command.class, "DeleteOrderActorSK")), "Gateway");
+        handler = new Routes(testKit.system(), gateway).userRoutes().handler(testKit.system());
+        getProduct = HttpRequest.GET("/products/101");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    @Benchmark
+    public HttpEntity.Strict getProduct() throws Exception {
+        HttpResponse response = handler.apply(getProduct).toCompletableFuture().get();
+        return response.entity().toStrict(TIMEOUT_MILLIS, testKit.system()).toCompletableFuture().get();
+    }
+}
@@ -0,0 +1,29 @@
+package com.keval.pods.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keval.pods.product.ProductLoader;
+
+// Parsing products.csv at startup, which every node does before spawning product entities
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductLoaderBenchmark {
+
+    @Benchmark
+    public ProductLoader loadProductsFromCsv() {
+        ProductLoader productLoader = new ProductLoader();
+        productLoader.loadProductsFromCsv();
+        return productLoader;
+    }
+}
@@ -0,0 +1,103 @@
+package com.keval.pods.jmh;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keval.pods.Gateway;
+import com.keval.pods.Routes;
+import com.keval.pods.order.Order;
+import com.keval.pods.product.Product;
+import com.keval.pods.product.ProductJson;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntity;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.japi.function.Function;
+
+// HTTP routing, JSON (un)marshalling and the ask to the Gateway, without a network hop
+// The Gateway is stubbed so only the Routes layer is measured
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoutesBenchmark {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final Product PRODUCT = new Product(101, "Product 101", "Benchmark product", 100, 1000);
+    private static final ProductJson PRODUCT_JSON = ProductJson.of(PRODUCT, ProductJson.prefixOf(PRODUCT));
+
+    private ActorTestKit testKit;
+    private Function<HttpRequest, CompletionStage<HttpResponse>> handler;
+
+    private HttpRequest getProduct;
+    private HttpRequest postOrder;
+
+    // Gateway that answers product and order requests immediately
+    private static Behavior<Gateway.Command> stubGateway() {
+        return Behaviors.receive(Gateway.Command.class)
+                .onMessage(Gateway.GetProduct.class, message -> {
+                    message.replyTo().tell(PRODUCT_JSON);
+                    return Behaviors.same();
+                })
+                .onMessage(Gateway.CreateOrder.class, message -> {
+                    message.order().order_id = 1;
+                    message.order().total_price = PRODUCT.price;
+                    message.order().status = Order.STATUS_PLACED;
+                    message.replyTo().tell(message.order());
+                    return Behaviors.same();
+                })
+                .build();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        testKit = BenchmarkSystems.local("RoutesBenchmark");
+        ActorRef<Gateway.Command> gateway = testKit.spawn(stubGateway(), "Gateway");
+        handler = new Routes(testKit.system(), gateway).userRoutes().handler(testKit.system());
+
+        getProduct = HttpRequest.GET("/products/101");
+        postOrder = HttpRequest.POST("/orders").withEntity(HttpEntity.create(ContentTypes.APPLICATION_JSON,
+                "{\"user_id\": 1, \"items\": [{\"product_id\": 101, \"quantity\": 1}]}"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    // Runs the request through the route and drains the response entity
+    private HttpEntity.Strict handle(HttpRequest request) throws Exception {
+        HttpResponse response = handler.apply(request).toCompletableFuture().get();
+        return response.entity().toStrict(TIMEOUT_MILLIS, testKit.system()).toCompletableFuture().get();
+    }
+
+    @Benchmark
+    public HttpEntity.Strict getProduct() throws Exception {
+        return handle(getProduct);
+    }
+
+    @Benchmark
+    public HttpEntity.Strict postOrder() throws Exception {
+        return handle(postOrder);
+    }
+}
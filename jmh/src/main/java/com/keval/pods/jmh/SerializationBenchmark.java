@@ -0,0 +1,85 @@
+package com.keval.pods.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keval.pods.order.PostOrderActor;
+import com.keval.pods.product.Product;
+import com.keval.pods.product.ProductActor;
+import com.keval.pods.trace.TraceContext;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
+
+// Jackson CBOR round trips of the messages that cross nodes during an order
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private ActorTestKit testKit;
+    private Serialization serialization;
+
+    private ProductActor.DecreaseProductStock decreaseProductStock;
+    private PostOrderActor.GetProductInfoResponse getProductInfoResponse;
+    private PostOrderActor.DecreaseProductStockResponse decreaseProductStockResponse;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        testKit = BenchmarkSystems.local("SerializationBenchmark");
+        serialization = SerializationExtension.get(testKit.system().classicSystem());
+
+        ActorRef<PostOrderActor.Command> replyTo = testKit.spawn(Behaviors.empty(), "postOrderActor");
+        decreaseProductStock = new ProductActor.DecreaseProductStock(1, 0, replyTo, 2, TraceContext.NONE);
+        getProductInfoResponse = new PostOrderActor.GetProductInfoResponse(1, 0,
+                new Product(101, "Product 101", "Benchmark product", 100, 1000));
+        decreaseProductStockResponse = new PostOrderActor.DecreaseProductStockResponse(1, 0, 101, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    private Object roundTrip(Object message) {
+        Serializer serializer = serialization.findSerializerFor(message);
+        byte[] bytes = serializer.toBinary(message);
+        String manifest = Serializers.manifestFor(serializer, message);
+        return serialization.deserialize(bytes, serializer.identifier(), manifest).get();
+    }
+
+    @Benchmark
+    public Object decreaseProductStock() {
+        return roundTrip(decreaseProductStock);
+    }
+
+    @Benchmark
+    public Object getProductInfoResponse() {
+        return roundTrip(getProductInfoResponse);
+    }
+
+    @Benchmark
+    public Object decreaseProductStockResponse() {
+        return roundTrip(decreaseProductStockResponse);
+    }
+}
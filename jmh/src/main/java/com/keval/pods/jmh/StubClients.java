@@ -0,0 +1,35 @@
+package com.keval.pods.jmh;
+
+import java.util.Optional;
+
+import com.keval.pods.client.UsersClient;
+import com.keval.pods.client.WalletsClient;
+import com.keval.pods.client.model.User;
+import com.keval.pods.client.model.WalletTrxn;
+
+// Service clients that answer immediately, so benchmarks measure the marketplace alone
+final class StubClients {
+
+    private StubClients() {}
+
+    // Every user exists and has already availed the discount
+    static class Users extends UsersClient {
+        @Override
+        public Optional<User> getUserById(Integer user_id) {
+            return Optional.of(new User(user_id, true));
+        }
+
+        @Override
+        public Integer setUserDiscountAvailed(Integer user_id, Boolean discount_availed) {
+            return 202;
+        }
+    }
+
+    // Every wallet transaction succeeds
+    static class Wallets extends WalletsClient {
+        @Override
+        public Integer putWalletTrxn(Integer user_id, WalletTrxn walletTrxn) {
+            return 200;
+        }
+    }
+}
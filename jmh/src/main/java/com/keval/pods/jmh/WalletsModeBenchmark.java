@@ -0,0 +1,103 @@
+package com.keval.pods.jmh;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.keval.pods.client.WalletsClient;
+import com.keval.pods.client.model.WalletTrxn;
+import com.keval.pods.order.Order;
+import com.keval.pods.order.PostOrderActor;
+import com.keval.pods.pool.WorkerPool;
+import com.keval.pods.product.Product;
+import com.keval.pods.product.ProductActor;
+import com.keval.pods.trace.TraceContext;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+
+// Order sagas placed through the node's PostOrderActor pool against a real Wallets service, to compare its
+// platform-thread and virtual-thread modes under the pool's traffic (one debit per order). Users are stubbed.
+// Start the wallets service in the mode under test and point the run at it, e.g.
+//   java -jar wallets.jar --server.port=8084 --spring.profiles.active=virtual
+//   java -Dmarketplace-app.service-urls.wallets=http://localhost:8084 -jar target/benchmarks.jar WalletsMode
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Threads(64)
+@Fork(1)
+public class WalletsModeBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final int PRODUCT_ID = 101;
+    private static final int USERS = 1000;
+
+    private ActorTestKit testKit;
+    private ActorRef<PostOrderActor.Command> postOrderPool;
+    private final AtomicInteger nextOrderId = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        testKit = BenchmarkSystems.cluster("WalletsModeBenchmark");
+
+        ClusterSharding.get(testKit.system())
+            .entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + PRODUCT_ID)
+            .tell(new ProductActor.InitializeProduct(new Product(PRODUCT_ID, "Product " + PRODUCT_ID, "Benchmark product", 1, Integer.MAX_VALUE)));
+
+        // Wallets with enough balance for the whole run
+        WalletsClient walletsClient = new WalletsClient();
+        for (int user_id = 0; user_id < USERS; user_id++)
+            walletsClient.putWalletTrxn(user_id, new WalletTrxn(WalletTrxn.CREDIT, Integer.MAX_VALUE / 2));
+
+        // The pool as Main spawns it, sized and resized by marketplace-app.worker-pools.post-order
+        ActorRef<Object> pool = testKit.spawn(WorkerPool.create("post-order", "postOrderActor", PostOrderActor.Command.class,
+                ServiceKey.create(PostOrderActor.Command.class, "PostOrderActorSK"),
+                load -> PostOrderActor.create(new StubClients.Users(), new WalletsClient(), load),
+                Props.empty(), testKit.system().settings().config().getConfig("marketplace-app.worker-pools")), "postOrderPool");
+        postOrderPool = pool.narrow();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    @Benchmark
+    public Order placeOrder() throws Exception {
+        Order order = new Order();
+        order.order_id = nextOrderId.getAndIncrement();
+        order.user_id = ThreadLocalRandom.current().nextInt(USERS);
+        order.items = new ArrayList<>();
+        Order.OrderItem item = new Order.OrderItem();
+        item.product_id = PRODUCT_ID;
+        item.quantity = 1;
+        order.items.add(item);
+
+        return AskPattern.<PostOrderActor.Command, Order>ask(postOrderPool,
+                ref -> new PostOrderActor.PostOrderRequest(order, ref, TraceContext.NONE), TIMEOUT, testKit.scheduler())
+            .toCompletableFuture()
+            .get();
+    }
+}
@@ -0,0 +1,23 @@
+package com.keval.pods.loadgen;
+
+// Marketplace endpoints driven by the load generator, keyed by their name in the --mix option
+public enum Endpoint {
+    POST_ORDER("post"),
+    GET_PRODUCT("get"),
+    PUT_ORDER("put"),
+    DELETE_ORDER("delete");
+
+    public final String key;
+
+    Endpoint(String key) {
+        this.key = key;
+    }
+
+    public static Endpoint fromKey(String key) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.key.equals(key))
+                return endpoint;
+        }
+        throw new IllegalArgumentException("Unknown endpoint in mix: " + key);
+    }
+}
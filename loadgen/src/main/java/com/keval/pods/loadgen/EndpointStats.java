@@ -0,0 +1,58 @@
+package com.keval.pods.loadgen;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+// Latencies (in microseconds, measured from the intended send time) and outcome counts for one endpoint
+public class EndpointStats {
+
+    public final Endpoint endpoint;
+
+    // Written by response callbacks, drained once per reporting interval
+    private final Recorder recorder = new Recorder(3);
+    // Everything recorded after warmup, owned by the reporting thread
+    private final Histogram total = new Histogram(3);
+    private Histogram interval = null;
+
+    public final LongAdder ok = new LongAdder();
+    public final LongAdder rejected = new LongAdder();
+    public final LongAdder serverErrors = new LongAdder();
+    public final LongAdder failures = new LongAdder();
+    public final LongAdder dropped = new LongAdder();
+
+    public EndpointStats(Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public void record(long intendedNanos, int status, boolean measured) {
+        if (status >= 200 && status < 300)
+            ok.increment();
+        else if (status >= 400 && status < 500)
+            rejected.increment();
+        else
+            serverErrors.increment();
+
+        if (measured)
+            recorder.recordValue(Math.max(0, (System.nanoTime() - intendedNanos) / 1000));
+    }
+
+    // Transport failures and timeouts still count towards latency, at the time they were detected
+    public void recordFailure(long intendedNanos, boolean measured) {
+        failures.increment();
+        if (measured)
+            recorder.recordValue(Math.max(0, (System.nanoTime() - intendedNanos) / 1000));
+    }
+
+    // Swaps out the histogram of the interval just ended and folds it into the total
+    public Histogram nextInterval() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return interval;
+    }
+
+    public Histogram total() {
+        return total;
+    }
+}
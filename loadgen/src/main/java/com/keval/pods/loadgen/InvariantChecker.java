@@ -0,0 +1,93 @@
+package com.keval.pods.loadgen;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Snapshots product stock and wallet balances before the run and checks them against the ledger afterwards:
+//   stock   = initial stock   - units in acknowledged orders + units in acknowledged cancellations
+//   balance = initial balance - acknowledged order totals    + acknowledged refunds
+// and stock never goes negative
+public class InvariantChecker {
+
+    private final LoadGenConfig config;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<Integer, Integer> initialStock = new LinkedHashMap<>();
+    private final Map<Integer, Integer> initialBalance = new LinkedHashMap<>();
+
+    public InvariantChecker(LoadGenConfig config, HttpClient httpClient) {
+        this.config = config;
+        this.httpClient = httpClient;
+    }
+
+    public void snapshot() throws Exception {
+        for (Integer productId : config.productIds) {
+            Integer stock = fetch(config.marketplaceUrl + "/products/" + productId, "stock_quantity");
+            if (stock == null)
+                System.out.println("Product " + productId + " not found, excluding it from the run");
+            else
+                initialStock.put(productId, stock);
+        }
+        for (Integer userId : config.userIds) {
+            Integer balance = fetch(config.walletsUrl + "/wallets/" + userId, "balance");
+            if (balance != null)
+                initialBalance.put(userId, balance);
+        }
+        if (initialBalance.size() < config.userIds.size())
+            System.out.println((config.userIds.size() - initialBalance.size()) + " users have no wallet, their orders will be rejected (see --setup)");
+    }
+
+    // Products that exist, in the configured order so the Zipf hot keys stay the same
+    public List<Integer> products() {
+        return new ArrayList<>(initialStock.keySet());
+    }
+
+    // Returns the number of violations found, printing each one
+    public int verify(Ledger ledger) throws Exception {
+        int violations = 0;
+
+        for (Map.Entry<Integer, Integer> entry : initialStock.entrySet()) {
+            int productId = entry.getKey();
+            Integer actual = fetch(config.marketplaceUrl + "/products/" + productId, "stock_quantity");
+            long expected = entry.getValue() - ledger.sold(productId);
+            if (actual == null || actual != expected || actual < 0) {
+                System.out.println("  stock violation: product " + productId + " expected " + expected + ", found " + actual);
+                violations++;
+            }
+        }
+
+        for (Map.Entry<Integer, Integer> entry : initialBalance.entrySet()) {
+            int userId = entry.getKey();
+            Integer actual = fetch(config.walletsUrl + "/wallets/" + userId, "balance");
+            long expected = entry.getValue() - ledger.debited(userId);
+            if (actual == null || actual != expected) {
+                System.out.println("  wallet violation: user " + userId + " expected " + expected + ", found " + actual);
+                violations++;
+            }
+        }
+
+        return violations;
+    }
+
+    // GETs a JSON object and reads one integer field, null on any non-200 response
+    private Integer fetch(String url, String field) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(url))
+            .timeout(config.requestTimeout)
+            .GET()
+            .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200)
+            return null;
+        return objectMapper.readTree(response.body()).get(field).asInt();
+    }
+}
@@ -0,0 +1,71 @@
+package com.keval.pods.loadgen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Client-side record of what the marketplace acknowledged, used to derive the expected stock and wallet balances
+// Only acknowledged outcomes are applied; requests that timed out or failed in transport are counted as unknown
+public class Ledger {
+
+    public record PlacedOrder(int orderId, int userId, int totalPrice, Map<Integer, Integer> quantities) {}
+
+    // Units sold per product and amount debited per user, net of cancellations
+    private final Map<Integer, AtomicLong> soldByProduct = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> debitedByUser = new ConcurrentHashMap<>();
+
+    // PLACED orders not currently claimed by a PUT or DELETE, for O(1) random picks
+    private final List<PlacedOrder> cancellable = new ArrayList<>();
+
+    private final AtomicLong unknownOutcomes = new AtomicLong();
+
+    public void placed(PlacedOrder order) {
+        for (Map.Entry<Integer, Integer> item : order.quantities().entrySet())
+            soldByProduct.computeIfAbsent(item.getKey(), k -> new AtomicLong()).addAndGet(item.getValue());
+        debitedByUser.computeIfAbsent(order.userId(), k -> new AtomicLong()).addAndGet(order.totalPrice());
+        release(order);
+    }
+
+    public void cancelled(PlacedOrder order) {
+        for (Map.Entry<Integer, Integer> item : order.quantities().entrySet())
+            soldByProduct.get(item.getKey()).addAndGet(-item.getValue());
+        debitedByUser.get(order.userId()).addAndGet(-order.totalPrice());
+    }
+
+    // Takes a random PLACED order out of the pool so no two in-flight requests target it, null if there are none
+    public synchronized PlacedOrder claim(SplittableRandom random) {
+        if (cancellable.isEmpty())
+            return null;
+        int index = random.nextInt(cancellable.size());
+        PlacedOrder order = cancellable.get(index);
+        cancellable.set(index, cancellable.get(cancellable.size() - 1));
+        cancellable.remove(cancellable.size() - 1);
+        return order;
+    }
+
+    // Returns a claimed order to the pool when the request on it did not change its status
+    public synchronized void release(PlacedOrder order) {
+        cancellable.add(order);
+    }
+
+    public void unknownOutcome() {
+        unknownOutcomes.incrementAndGet();
+    }
+
+    public long unknownOutcomes() {
+        return unknownOutcomes.get();
+    }
+
+    public long sold(int productId) {
+        AtomicLong sold = soldByProduct.get(productId);
+        return sold == null ? 0 : sold.get();
+    }
+
+    public long debited(int userId) {
+        AtomicLong debited = debitedByUser.get(userId);
+        return debited == null ? 0 : debited.get();
+    }
+}
@@ -0,0 +1,117 @@
+package com.keval.pods.loadgen;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Load generator options, given on the command line as --name=value
+public class LoadGenConfig {
+
+    public String marketplaceUrl = "http://localhost:8081";
+    public String usersUrl = "http://localhost:8080";
+    public String walletsUrl = "http://localhost:8082";
+
+    // Requests per second, issued on a fixed schedule regardless of how fast responses come back
+    public double rate = 200;
+    public Duration duration = Duration.ofSeconds(60);
+    // Leading part of the run excluded from the reported histograms
+    public Duration warmup = Duration.ofSeconds(10);
+    public Duration requestTimeout = Duration.ofSeconds(10);
+    // Requests allowed in flight before new ones are dropped (and counted) instead of sent
+    public int maxInFlight = 10000;
+
+    // Share of each endpoint in the request mix
+    public Map<Endpoint, Double> mix = parseMix("post=50,get=35,put=5,delete=10");
+
+    // Keys drawn with Zipf skew: the first product and user ids listed are the hottest
+    public List<Integer> productIds = parseIds("101-110");
+    public List<Integer> userIds = parseIds("1-1000");
+    public double productSkew = 1.0;
+    public double userSkew = 0.5;
+    public int maxItemsPerOrder = 3;
+    public int maxQuantity = 1;
+
+    // Create users and fund wallets before the run
+    public boolean setup = false;
+    public int initialBalance = 100000000;
+
+    public long seed = 42;
+    // Optional HdrHistogram interval log, one histogram per endpoint per second
+    public String histogramLog = null;
+
+    public static LoadGenConfig parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            int split = arg.indexOf('=');
+            options.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+
+        LoadGenConfig config = new LoadGenConfig();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            String value = option.getValue();
+            switch (option.getKey()) {
+                case "marketplace" -> config.marketplaceUrl = value;
+                case "users" -> config.usersUrl = value;
+                case "wallets" -> config.walletsUrl = value;
+                case "rate" -> config.rate = Double.parseDouble(value);
+                case "duration" -> config.duration = Duration.ofSeconds(Long.parseLong(value));
+                case "warmup" -> config.warmup = Duration.ofSeconds(Long.parseLong(value));
+                case "request-timeout" -> config.requestTimeout = Duration.ofMillis(Long.parseLong(value));
+                case "max-in-flight" -> config.maxInFlight = Integer.parseInt(value);
+                case "mix" -> config.mix = parseMix(value);
+                case "products" -> config.productIds = parseIds(value);
+                case "user-ids" -> config.userIds = parseIds(value);
+                case "product-skew" -> config.productSkew = Double.parseDouble(value);
+                case "user-skew" -> config.userSkew = Double.parseDouble(value);
+                case "max-items" -> config.maxItemsPerOrder = Integer.parseInt(value);
+                case "max-quantity" -> config.maxQuantity = Integer.parseInt(value);
+                case "setup" -> config.setup = Boolean.parseBoolean(value);
+                case "initial-balance" -> config.initialBalance = Integer.parseInt(value);
+                case "seed" -> config.seed = Long.parseLong(value);
+                case "hlog" -> config.histogramLog = value;
+                default -> throw new IllegalArgumentException("Unknown option: --" + option.getKey());
+            }
+        }
+
+        if (config.rate <= 0)
+            throw new IllegalArgumentException("--rate must be positive");
+        if (config.warmup.compareTo(config.duration) >= 0)
+            throw new IllegalArgumentException("--warmup must be shorter than --duration");
+        return config;
+    }
+
+    // "post=50,get=35,put=5,delete=10" -> normalized shares
+    static Map<Endpoint, Double> parseMix(String value) {
+        Map<Endpoint, Double> mix = new EnumMap<>(Endpoint.class);
+        double total = 0;
+        for (String part : value.split(",")) {
+            String[] keyValue = part.trim().split("=");
+            double weight = Double.parseDouble(keyValue[1]);
+            mix.put(Endpoint.fromKey(keyValue[0].trim()), weight);
+            total += weight;
+        }
+        if (total <= 0)
+            throw new IllegalArgumentException("--mix weights must add up to more than zero");
+        for (Map.Entry<Endpoint, Double> entry : mix.entrySet())
+            entry.setValue(entry.getValue() / total);
+        return mix;
+    }
+
+    // "101-110,120,130-132" -> [101..110, 120, 130..132], order preserved
+    static List<Integer> parseIds(String value) {
+        List<Integer> ids = new ArrayList<>();
+        for (String part : value.split(",")) {
+            String[] range = part.trim().split("-");
+            int from = Integer.parseInt(range[0]);
+            int to = range.length > 1 ? Integer.parseInt(range[1]) : from;
+            for (int id = from; id <= to; id++)
+                ids.add(id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,380 @@
+package com.keval.pods.loadgen;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+// Open-model load generator for the marketplace
+//
+// Requests are issued on a fixed schedule (one every 1/rate seconds) from a single dispatch thread and sent
+// asynchronously, so a slow server does not slow the arrival rate down. Latency is measured from the time a
+// request was scheduled to be sent, which keeps queueing delay in the numbers instead of hiding it
+// (no coordinated omission).
+public class LoadGenerator {
+
+    private final LoadGenConfig config;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SplittableRandom random;
+
+    private final Ledger ledger = new Ledger();
+    private final InvariantChecker invariantChecker;
+    private final Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+
+    // Endpoint picked for a request is the first whose cumulative share exceeds a uniform sample
+    private final Endpoint[] mixEndpoints;
+    private final double[] mixCdf;
+
+    private List<Integer> productIds;
+    private ZipfSampler productSampler;
+    private final ZipfSampler userSampler;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+
+    public LoadGenerator(LoadGenConfig config) {
+        this.config = config;
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(config.requestTimeout)
+            .build();
+        this.random = new SplittableRandom(config.seed);
+        this.invariantChecker = new InvariantChecker(config, httpClient);
+
+        for (Endpoint endpoint : Endpoint.values())
+            stats.put(endpoint, new EndpointStats(endpoint));
+
+        this.mixEndpoints = config.mix.keySet().toArray(new Endpoint[0]);
+        this.mixCdf = new double[mixEndpoints.length];
+        double cumulative = 0;
+        for (int i = 0; i < mixEndpoints.length; i++) {
+            cumulative += config.mix.get(mixEndpoints[i]);
+            mixCdf[i] = cumulative;
+        }
+
+        this.userSampler = new ZipfSampler(config.userIds.size(), config.userSkew);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenConfig config = LoadGenConfig.parse(args);
+        int violations = new LoadGenerator(config).run();
+        System.exit(violations == 0 ? 0 : 1);
+    }
+
+    // Runs setup, the load and the invariant checks, returning the number of invariant violations
+    public int run() throws Exception {
+        if (config.setup)
+            setupUsersAndWallets();
+
+        invariantChecker.snapshot();
+        productIds = invariantChecker.products();
+        if (productIds.isEmpty())
+            throw new IllegalStateException("None of the configured products exist in the marketplace");
+        productSampler = new ZipfSampler(productIds.size(), config.productSkew);
+
+        HistogramLogWriter logWriter = null;
+        if (config.histogramLog != null) {
+            logWriter = new HistogramLogWriter(new PrintStream(new FileOutputStream(config.histogramLog)));
+            logWriter.outputLogFormatVersion();
+            logWriter.outputLegend();
+        }
+
+        System.out.printf("Driving %s at %.0f req/s for %ds (%ds warmup), mix %s%n",
+            config.marketplaceUrl, config.rate, config.duration.toSeconds(), config.warmup.toSeconds(), config.mix);
+
+        long startNanos = System.nanoTime();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        HistogramLogWriter intervalLogWriter = logWriter;
+        reporter.scheduleAtFixedRate(() -> report(startNanos, intervalLogWriter), 1, 1, TimeUnit.SECONDS);
+
+        dispatch(startNanos);
+
+        // Let outstanding requests finish or time out before the final numbers and checks
+        long drainDeadline = System.nanoTime() + config.requestTimeout.toNanos() * 2;
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline)
+            Thread.sleep(50);
+
+        reporter.shutdown();
+        reporter.awaitTermination(5, TimeUnit.SECONDS);
+        report(startNanos, logWriter);
+        if (logWriter != null)
+            logWriter.close();
+
+        printSummary();
+
+        System.out.println("Checking stock and wallet invariants");
+        int violations = invariantChecker.verify(ledger);
+        if (inFlight.get() > 0 || ledger.unknownOutcomes() > 0)
+            System.out.println("  " + ledger.unknownOutcomes() + " requests with unknown outcome and " + inFlight.get()
+                + " still in flight, violations may be caused by them");
+        System.out.println(violations == 0 ? "Invariants hold" : violations + " invariant violations");
+        return violations;
+    }
+
+    private void dispatch(long startNanos) {
+        long intervalNanos = (long) (1_000_000_000L / config.rate);
+        long warmupEndNanos = startNanos + config.warmup.toNanos();
+        long endNanos = startNanos + config.duration.toNanos();
+
+        for (long i = 0; ; i++) {
+            long intendedNanos = startNanos + i * intervalNanos;
+            if (intendedNanos >= endNanos)
+                break;
+
+            // If we fell behind (GC, slow callbacks) the overdue requests go out at once, keeping their intended time
+            long waitNanos = intendedNanos - System.nanoTime();
+            if (waitNanos > 0)
+                LockSupport.parkNanos(waitNanos);
+
+            Endpoint endpoint = pickEndpoint();
+            boolean measured = intendedNanos >= warmupEndNanos;
+
+            if (inFlight.get() >= config.maxInFlight) {
+                stats.get(endpoint).dropped.increment();
+                continue;
+            }
+
+            switch (endpoint) {
+                case POST_ORDER -> postOrder(intendedNanos, measured);
+                case GET_PRODUCT -> getProduct(intendedNanos, measured);
+                case PUT_ORDER -> putOrder(intendedNanos, measured);
+                case DELETE_ORDER -> deleteOrder(intendedNanos, measured);
+            }
+        }
+    }
+
+    private Endpoint pickEndpoint() {
+        double u = random.nextDouble();
+        for (int i = 0; i < mixCdf.length; i++) {
+            if (u < mixCdf[i])
+                return mixEndpoints[i];
+        }
+        return mixEndpoints[mixEndpoints.length - 1];
+    }
+
+    // ==== Requests ====
+
+    private void postOrder(long intendedNanos, boolean measured) {
+        int userId = config.userIds.get(userSampler.sample(random));
+
+        // Duplicate products are merged, as the marketplace does
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        int items = 1 + random.nextInt(config.maxItemsPerOrder);
+        for (int i = 0; i < items; i++) {
+            int productId = productIds.get(productSampler.sample(random));
+            quantities.merge(productId, 1 + random.nextInt(config.maxQuantity), Integer::sum);
+        }
+
+        ObjectNode body = objectMapper.createObjectNode().put("user_id", userId);
+        ArrayNode itemsNode = body.putArray("items");
+        for (Map.Entry<Integer, Integer> item : quantities.entrySet())
+            itemsNode.addObject().put("product_id", item.getKey()).put("quantity", item.getValue());
+
+        HttpRequest request = json(config.marketplaceUrl + "/orders")
+            .POST(BodyPublishers.ofString(body.toString()))
+            .build();
+
+        send(Endpoint.POST_ORDER, request, intendedNanos, measured, (status, responseBody) -> {
+            if (status == 201) {
+                JsonNode order = readTree(responseBody);
+                ledger.placed(new Ledger.PlacedOrder(order.get("order_id").asInt(), userId, order.get("total_price").asInt(), quantities));
+            }
+            // 400 is an orderly rejection (stock, balance, user), anything else may or may not have been placed
+            else if (status != 400)
+                ledger.unknownOutcome();
+        }, ledger::unknownOutcome);
+    }
+
+    private void getProduct(long intendedNanos, boolean measured) {
+        int productId = productIds.get(productSampler.sample(random));
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(config.marketplaceUrl + "/products/" + productId))
+            .timeout(config.requestTimeout)
+            .GET()
+            .build();
+
+        send(Endpoint.GET_PRODUCT, request, intendedNanos, measured, (status, responseBody) -> {}, () -> {});
+    }
+
+    private void putOrder(long intendedNanos, boolean measured) {
+        Ledger.PlacedOrder order = ledger.claim(random);
+        // Nothing to deliver yet, keep the arrival rate by reading a product instead
+        if (order == null) {
+            getProduct(intendedNanos, measured);
+            return;
+        }
+
+        ObjectNode body = objectMapper.createObjectNode()
+            .put("order_id", order.orderId())
+            .put("status", "DELIVERED");
+        HttpRequest request = json(config.marketplaceUrl + "/orders/" + order.orderId())
+            .PUT(BodyPublishers.ofString(body.toString()))
+            .build();
+
+        // A delivered order leaves the pool for good; an unknown outcome does too since it may have been delivered
+        send(Endpoint.PUT_ORDER, request, intendedNanos, measured, status -> {
+            if (status != 200 && status != 400)
+                ledger.unknownOutcome();
+        }, ledger::unknownOutcome);
+    }
+
+    private void deleteOrder(long intendedNanos, boolean measured) {
+        Ledger.PlacedOrder order = ledger.claim(random);
+        if (order == null) {
+            getProduct(intendedNanos, measured);
+            return;
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(config.marketplaceUrl + "/orders/" + order.orderId()))
+            .timeout(config.requestTimeout)
+            .DELETE()
+            .build();
+
+        send(Endpoint.DELETE_ORDER, request, intendedNanos, measured, status -> {
+            if (status == 200)
+                ledger.cancelled(order);
+            else if (status != 400)
+                ledger.unknownOutcome();
+        }, ledger::unknownOutcome);
+    }
+
+    private HttpRequest.Builder json(String url) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create(url))
+            .timeout(config.requestTimeout)
+            .header("Content-Type", "application/json");
+    }
+
+    private JsonNode readTree(String body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unparseable response: " + body, e);
+        }
+    }
+
+    private interface ResponseHandler {
+        void handle(int status, String body);
+    }
+
+    private void send(Endpoint endpoint, HttpRequest request, long intendedNanos, boolean measured, IntConsumer onStatus, Runnable onFailure) {
+        send(endpoint, request, intendedNanos, measured, (status, body) -> onStatus.accept(status), onFailure);
+    }
+
+    private void send(Endpoint endpoint, HttpRequest request, long intendedNanos, boolean measured, ResponseHandler onResponse, Runnable onFailure) {
+        EndpointStats endpointStats = stats.get(endpoint);
+        inFlight.incrementAndGet();
+        sent.increment();
+
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            try {
+                if (error != null) {
+                    endpointStats.recordFailure(intendedNanos, measured);
+                    onFailure.run();
+                }
+                else {
+                    endpointStats.record(intendedNanos, response.statusCode(), measured);
+                    onResponse.handle(response.statusCode(), response.body());
+                }
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    // ==== Reporting ====
+
+    // One line per second: requests sent, in flight and each endpoint's p99 over the last interval
+    private void report(long startNanos, HistogramLogWriter logWriter) {
+        long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+        StringBuilder line = new StringBuilder(String.format("[%3ds] sent %d, in flight %d", elapsedSeconds, sent.sum(), inFlight.get()));
+
+        for (EndpointStats endpointStats : stats.values()) {
+            Histogram interval = endpointStats.nextInterval();
+            if (interval.getTotalCount() == 0)
+                continue;
+            line.append(String.format(" | %s n=%d p99=%.1fms", endpointStats.endpoint.key, interval.getTotalCount(),
+                interval.getValueAtPercentile(99) / 1000.0));
+            if (logWriter != null) {
+                interval.setTag(endpointStats.endpoint.key);
+                logWriter.outputIntervalHistogram(interval);
+            }
+        }
+        System.out.println(line);
+    }
+
+    private void printSummary() {
+        System.out.println();
+        System.out.printf("%-8s%9s%9s%9s%9s%9s%9s%10s%10s%10s%10s%10s%n",
+            "", "count", "2xx", "4xx", "5xx", "failed", "dropped", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        List<Histogram> histograms = new ArrayList<>();
+        for (EndpointStats endpointStats : stats.values()) {
+            Histogram total = endpointStats.total();
+            histograms.add(total);
+            System.out.printf("%-8s%9d%9d%9d%9d%9d%9d%10.2f%10.2f%10.2f%10.2f%10.2f%n",
+                endpointStats.endpoint.key,
+                total.getTotalCount(),
+                endpointStats.ok.sum(),
+                endpointStats.rejected.sum(),
+                endpointStats.serverErrors.sum(),
+                endpointStats.failures.sum(),
+                endpointStats.dropped.sum(),
+                total.getValueAtPercentile(50) / 1000.0,
+                total.getValueAtPercentile(90) / 1000.0,
+                total.getValueAtPercentile(99) / 1000.0,
+                total.getValueAtPercentile(99.9) / 1000.0,
+                total.getMaxValue() / 1000.0);
+        }
+        System.out.println("(latencies exclude warmup, outcome counts include it)");
+        System.out.println();
+    }
+
+    // ==== Setup ====
+
+    private void setupUsersAndWallets() throws Exception {
+        System.out.println("Creating " + config.userIds.size() + " users with wallets of " + config.initialBalance);
+        for (Integer userId : config.userIds) {
+            ObjectNode user = objectMapper.createObjectNode()
+                .put("id", userId)
+                .put("name", "Load User " + userId)
+                .put("email", "loaduser" + userId + "@loadgen.local");
+            // Existing users are rejected, which is fine
+            httpClient.send(json(config.usersUrl + "/users").POST(BodyPublishers.ofString(user.toString())).build(),
+                HttpResponse.BodyHandlers.discarding());
+
+            ObjectNode credit = objectMapper.createObjectNode()
+                .put("action", "credit")
+                .put("amount", config.initialBalance);
+            httpClient.send(json(config.walletsUrl + "/wallets/" + userId).PUT(BodyPublishers.ofString(credit.toString())).build(),
+                HttpResponse.BodyHandlers.discarding());
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.keval.pods.loadgen;
+
+import java.util.SplittableRandom;
+
+// Samples indices 0..n-1 with P(i) proportional to 1 / (i + 1)^skew
+// skew = 0 is uniform; around 1 a few hot keys take most of the traffic
+public class ZipfSampler {
+
+    private final double[] cdf;
+
+    public ZipfSampler(int n, double skew) {
+        if (n <= 0)
+            throw new IllegalArgumentException("Zipf sampler needs at least one key");
+
+        this.cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++)
+            cdf[i] /= sum;
+    }
+
+    public int sample(SplittableRandom random) {
+        double u = random.nextDouble();
+        // First index whose cumulative probability exceeds u
+        int low = 0, high = cdf.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cdf[mid] > u)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+    }
+}
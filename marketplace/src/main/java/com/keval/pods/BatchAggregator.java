@@ -0,0 +1,90 @@
+package com.keval.pods;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.RecipientRef;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.japi.function.Function;
+
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.Metrics;
+
+// Scatter-gather for one batch request, spawned by the Gateway as a child
+// Sends every ask at once with the same deadline, then replies with the results in request order;
+// asks that failed or missed the deadline are filled in by `missing`
+public class BatchAggregator<Res> extends AbstractBehavior<BatchAggregator.Command> {
+
+    public interface Command {}
+    private static final record Reply(int index, Object result) implements Command {}
+
+    // One request of the batch: where to send it and how to build it around the aggregator's reply ref
+    public static final record Ask<Req, Res>(RecipientRef<Req> target, Function<ActorRef<Res>, Req> createRequest) {}
+
+    // Asks of a batch that failed or missed its deadline
+    private static final Counter missedAsks = Metrics.counter("marketplace_batch_missed_asks_total", "Asks of batch requests that failed or missed the batch deadline");
+
+    private final Object[] results;
+    private final IntFunction<Res> missing;
+    private final ActorRef<List<Res>> replyTo;
+    private int pending;
+
+    public static <Res> Behavior<Command> create(Class<Res> resultClass, List<Ask<?, Res>> asks, IntFunction<Res> missing,
+                                                 Duration deadline, ActorRef<List<Res>> replyTo) {
+        return Behaviors.setup(context -> {
+            if (asks.isEmpty()) {
+                replyTo.tell(List.of());
+                return Behaviors.stopped();
+            }
+            return new BatchAggregator<>(context, resultClass, asks, missing, deadline, replyTo);
+        });
+    }
+
+    private BatchAggregator(ActorContext<Command> context, Class<Res> resultClass, List<Ask<?, Res>> asks, IntFunction<Res> missing,
+                            Duration deadline, ActorRef<List<Res>> replyTo) {
+        super(context);
+        this.results = new Object[asks.size()];
+        this.missing = missing;
+        this.replyTo = replyTo;
+        this.pending = asks.size();
+
+        // All asks are sent now with the same timeout, so they share a single deadline
+        for (int i = 0; i < asks.size(); i++)
+            send(resultClass, i, asks.get(i), deadline);
+    }
+
+    private <Req> void send(Class<Res> resultClass, int index, Ask<Req, Res> ask, Duration deadline) {
+        getContext().ask(resultClass, ask.target, deadline, ask.createRequest, (result, failure) -> {
+            if (failure != null)
+                missedAsks.increment();
+            return new Reply(index, failure == null ? result : null);
+        });
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Reply.class, this::onReply)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Behavior<Command> onReply(Reply reply) {
+        results[reply.index] = reply.result != null ? reply.result : missing.apply(reply.index);
+        if (--pending > 0)
+            return Behaviors.same();
+
+        List<Res> replies = new ArrayList<>(results.length);
+        for (Object result : results)
+            replies.add((Res) result);
+        replyTo.tell(replies);
+        return Behaviors.stopped();
+    }
+}
@@ -1,5 +1,9 @@
 package com.keval.pods;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.AbstractBehavior;
@@ -10,12 +14,20 @@ import akka.actor.typed.javadsl.Receive;
 import akka.actor.typed.javadsl.Routers;
 import akka.actor.typed.receptionist.ServiceKey;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.keval.pods.logging.ActivityLog;
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.Metrics;
 import com.keval.pods.order.DeleteOrderActor;
+import com.keval.pods.order.IdempotencyActor;
 import com.keval.pods.order.Order;
 import com.keval.pods.order.OrderActor;
 import com.keval.pods.order.PostOrderActor;
-import com.keval.pods.product.Product;
+import com.keval.pods.product.ProductJson;
 import com.keval.pods.product.ProductActor;
+import com.keval.pods.trace.Tracing;
 
 import akka.cluster.sharding.typed.javadsl.ClusterSharding;
 import akka.cluster.sharding.typed.javadsl.EntityRef;
@@ -24,14 +36,28 @@ import akka.cluster.sharding.typed.javadsl.EntityRef;
 
 
 public class Gateway extends AbstractBehavior<Gateway.Command> {
+    private final static Logger log = LoggerFactory.getLogger(Gateway.class);
+
+    // Product lookups, counted for the periodic summary and logged only when sampled
+    private static final ActivityLog.Category productLookups = ActivityLog.category("gateway-product-lookups", "gateway product lookups");
 
     public interface Command extends CborSerializable {}
 
     // GET /products/{productId}
-    public static final record GetProduct(Integer productId, ActorRef<Product> replyTo) implements Command {}
+    public static final record GetProduct(Integer productId, ActorRef<ProductJson> replyTo) implements Command {}
     // POST /orders
-    // Body: Order
-    public static final record CreateOrder(Order order, ActorRef<Order> replyTo) implements Command {}
+    // Body: Order, idempotencyKey from the optional Idempotency-Key header
+    public static final record CreateOrder(Order order, String idempotencyKey, ActorRef<Order> replyTo) implements Command {}
+    // Starts the saga for a CreateOrder, sent by the IdempotencyActor that claimed its key
+    public static final record PlaceOrder(Order order, ActorRef<Order> replyTo) implements Command {}
+    // GET /products?ids=...
+    // Replies in request order, with ProductJson.NOT_FOUND for each id that doesn't exist and ProductJson.missed(id)
+    // for each one whose ask failed or missed the deadline
+    public static final record GetProducts(List<Integer> productIds, ActorRef<List<ProductJson>> replyTo) implements Command {}
+    // POST /orders/batch
+    // Replies in request order with the placed Order, an empty Order if placement failed,
+    // or the request Order (order_id assigned, no status) if its saga missed the deadline
+    public static final record CreateOrders(List<Order> orders, ActorRef<List<Order>> replyTo) implements Command {}
     // GET /orders/{orderId}
     public static final record GetOrder(Integer orderId, ActorRef<Order> replyTo) implements Command {}
     // PUT /orders/{orderId}
@@ -40,9 +66,24 @@ public class Gateway extends AbstractBehavior<Gateway.Command> {
     // DELETE /orders/{orderId}
     public static final record CancelOrder(Integer orderId, ActorRef<Boolean> replyTo) implements Command {}
 
+    // Commands received, by type
+    private static final Counter getProductCommands = commandCounter("GetProduct");
+    private static final Counter createOrderCommands = commandCounter("CreateOrder");
+    private static final Counter getOrderCommands = commandCounter("GetOrder");
+    private static final Counter updateOrderCommands = commandCounter("UpdateOrder");
+    private static final Counter cancelOrderCommands = commandCounter("CancelOrder");
+    private static final Counter getProductsCommands = commandCounter("GetProducts");
+    private static final Counter createOrdersCommands = commandCounter("CreateOrders");
+
+    private static Counter commandCounter(String command) {
+        return Metrics.counter("marketplace_gateway_commands_total", "Commands received by the Gateway", "command", command);
+    }
+
     private final ClusterSharding sharding;
     private final ActorRef<PostOrderActor.Command> postOrderActorRouter;
     private final ActorRef<DeleteOrderActor.Command> deleteOrderActorRouter;
+    // Time a batch request waits for its slowest product or order
+    private final Duration batchDeadline;
 
     private Integer order_count = 0;
 
@@ -54,13 +95,15 @@ public class Gateway extends AbstractBehavior<Gateway.Command> {
         super(context);
         this.sharding = sharding;
 
-        // Initialize and spawn Group Router for PostOrderActors
+        // Initialize and spawn Group Router for the PostOrderActor pools, one per node, each routing to its least loaded workers
         GroupRouter<PostOrderActor.Command> postOrderActorGroup = Routers.group(postOrderActorSK);
         this.postOrderActorRouter = context.spawn(postOrderActorGroup, "postOrderActorGroup");
 
-        // Initialize and spawn Group Router for DeleteOrderActors
+        // Initialize and spawn Group Router for the DeleteOrderActor pools
         GroupRouter<DeleteOrderActor.Command> deleteOrderActorGroup = Routers.group(deleteOrderActorSK);
         this.deleteOrderActorRouter = context.spawn(deleteOrderActorGroup, "deleteOrderActorGroup");
+
+        this.batchDeadline = context.getSystem().settings().config().getDuration("marketplace-app.batch.deadline");
     }
 
     @Override
@@ -68,6 +111,9 @@ public class Gateway extends AbstractBehavior<Gateway.Command> {
         return newReceiveBuilder()
                 .onMessage(GetProduct.class, this::onGetProduct)
                 .onMessage(CreateOrder.class, this::onCreateOrder)
+                .onMessage(PlaceOrder.class, this::onPlaceOrder)
+                .onMessage(GetProducts.class, this::onGetProducts)
+                .onMessage(CreateOrders.class, this::onCreateOrders)
                 .onMessage(GetOrder.class, this::onGetOrder)
                 .onMessage(UpdateOrder.class, this::onUpdateOrder)
                 .onMessage(CancelOrder.class, this::onCancelOrder)
@@ -76,7 +122,10 @@ public class Gateway extends AbstractBehavior<Gateway.Command> {
 
     // Forwards request from GET /products/{productId} to the corresponding product actor
     private Behavior<Command> onGetProduct(GetProduct message) {
-        System.out.println("Gateway received GetProduct for product ID: " + message.productId);
+        productLookups.count();
+        if (productLookups.sampled(log))
+            log.debug("Gateway received GetProduct for product ID: {}", message.productId);
+        getProductCommands.increment();
 
         // Parse productId from the message
         String productId = String.valueOf(message.productId);
@@ -85,22 +134,74 @@ public class Gateway extends AbstractBehavior<Gateway.Command> {
         EntityRef<ProductActor.Command> productActorRef =
                 sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + productId);
 
-        productActorRef.tell(new ProductActor.GetProductInfo(message.replyTo));
+        productActorRef.tell(new ProductActor.GetProductJson(message.replyTo));
         return Behaviors.same();
     }
 
-    // Forwards request from POST /orders to a PostOrderActor corresponding
+    // Forwards request from POST /orders to a PostOrderActor, or to its IdempotencyActor when it has an Idempotency-Key
     private Behavior<Command> onCreateOrder(CreateOrder message) {
+        createOrderCommands.increment();
+
+        if (message.idempotencyKey == null)
+            return onPlaceOrder(new PlaceOrder(message.order, message.replyTo));
+
+        EntityRef<IdempotencyActor.Command> idempotencyActorRef = sharding.entityRefFor(IdempotencyActor.ENTITY_TYPE_KEY,
+                IdempotencyActor.entityId(message.order.user_id, message.idempotencyKey));
+        idempotencyActorRef.tell(new IdempotencyActor.ClaimOrder(message.order, message.replyTo, getContext().getSelf()));
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onPlaceOrder(PlaceOrder message) {
         // Obtain order_id from global (w.r.t Gateway) order_count
         message.order.order_id = order_count++;
 
-        // Send PostOrderRequest without Order request to the PostOrderActor
-        postOrderActorRouter.tell(new PostOrderActor.PostOrderRequest(message.order, message.replyTo));
+        // Send PostOrderRequest without Order request to the PostOrderActor, sampled for tracing
+        postOrderActorRouter.tell(new PostOrderActor.PostOrderRequest(message.order, message.replyTo, Tracing.start()));
         return Behaviors.same();
     }
 
+    // Scatter-gathers GET /products?ids=... across the product actors in one child aggregator
+    private Behavior<Command> onGetProducts(GetProducts message) {
+        getProductsCommands.increment();
+
+        List<BatchAggregator.Ask<?, ProductJson>> asks = new ArrayList<>(message.productIds.size());
+        for (Integer productId : message.productIds) {
+            EntityRef<ProductActor.Command> productActorRef =
+                    sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + productId);
+            asks.add(new BatchAggregator.Ask<ProductActor.Command, ProductJson>(productActorRef, ProductActor.GetProductJson::new));
+        }
+
+        getContext().spawnAnonymous(BatchAggregator.create(ProductJson.class, asks, index -> ProductJson.missed(message.productIds.get(index)), batchDeadline, message.replyTo));
+        return Behaviors.same();
+    }
+
+    // Runs the sagas of POST /orders/batch concurrently across the PostOrderActors, collected by one child aggregator
+    private Behavior<Command> onCreateOrders(CreateOrders message) {
+        createOrdersCommands.increment();
+
+        List<BatchAggregator.Ask<?, Order>> asks = new ArrayList<>(message.orders.size());
+        for (Order order : message.orders) {
+            order.order_id = order_count++;
+            asks.add(new BatchAggregator.Ask<PostOrderActor.Command, Order>(postOrderActorRouter,
+                    ref -> new PostOrderActor.PostOrderRequest(order, ref, Tracing.start())));
+        }
+
+        // The sagas own the request Orders, so a missed deadline is reported on a copy
+        getContext().spawnAnonymous(BatchAggregator.create(Order.class, asks, index -> pendingOrder(message.orders.get(index)), batchDeadline, message.replyTo));
+        return Behaviors.same();
+    }
+
+    private static Order pendingOrder(Order order) {
+        Order pending = new Order();
+        pending.order_id = order.order_id;
+        pending.user_id = order.user_id;
+        pending.items = order.items;
+        return pending;
+    }
+
     // Forwards request from GET /orders/{orderId} to the corresponding order actor
     private Behavior<Command> onGetOrder(GetOrder message) {
+        getOrderCommands.increment();
         EntityRef<OrderActor.Command> orderActorRef = sharding.entityRefFor(OrderActor.ENTITY_TYPE_KEY, OrderActor.IdPrefix + message.orderId);
         orderActorRef.tell(new OrderActor.GetOrder(message.replyTo));
         return Behaviors.same();
@@ -108,6 +209,8 @@ public class Gateway extends AbstractBehavior<Gateway.Command> {
     
     // Forwards request from PUT /orders/{orderId} to the corresponding order actor
     private Behavior<Command> onUpdateOrder(UpdateOrder message) {
+        updateOrderCommands.increment();
+
         // Verify that the orderId in path and payload are same
         if (message.orderId == message.order.order_id) {
             EntityRef<OrderActor.Command> orderActorRef = sharding.entityRefFor(OrderActor.ENTITY_TYPE_KEY, OrderActor.IdPrefix + message.order.order_id);
@@ -121,6 +224,7 @@ public class Gateway extends AbstractBehavior<Gateway.Command> {
     }
 
     private Behavior<Command> onCancelOrder(CancelOrder message) {
+        cancelOrderCommands.increment();
         deleteOrderActorRouter.tell(new DeleteOrderActor.DeleteOrderRequest(message.orderId, message.replyTo));
         return Behaviors.same();
     }
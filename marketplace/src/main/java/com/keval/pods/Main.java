@@ -4,8 +4,9 @@ import akka.NotUsed;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.MailboxSelector;
+import akka.actor.typed.Props;
 import akka.actor.typed.javadsl.Behaviors;
-import akka.actor.typed.receptionist.Receptionist;
 import akka.actor.typed.receptionist.ServiceKey;
 import akka.cluster.sharding.typed.javadsl.ClusterSharding;
 import akka.cluster.sharding.typed.javadsl.Entity;
@@ -15,15 +16,22 @@ import akka.http.javadsl.Http;
 import akka.http.javadsl.ServerBinding;
 import akka.http.javadsl.server.Route;
 
+import static akka.http.javadsl.server.Directives.concat;
+
 import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletionStage;
 
+import com.keval.pods.client.UsersClient;
+import com.keval.pods.client.WalletsClient;
+import com.keval.pods.logging.ActivityLog;
 import com.keval.pods.order.DeleteOrderActor;
+import com.keval.pods.order.IdempotencyActor;
 import com.keval.pods.order.OrderActor;
 import com.keval.pods.order.PostOrderActor;
+import com.keval.pods.pool.WorkerPool;
 import com.keval.pods.product.Product;
 import com.keval.pods.product.ProductActor;
 import com.keval.pods.product.ProductLoader;
@@ -53,6 +61,12 @@ public class Main {
         });
     }
 
+    // Metrics mailbox and assigned dispatcher of a kind of actor, both keyed e.g. "product-actor"
+    static Props actorProps(Config conf, String actor) {
+        return MailboxSelector.fromConfig("marketplace-app.metrics.mailboxes." + actor)
+                .withDispatcherFromConfig(conf.getString("marketplace-app.dispatcher-assignment." + actor));
+    }
+
     public static void main(String[] args) throws Exception {
         // Port for Akka system from command line arguments
         Integer port = Integer.valueOf(args[0]);
@@ -61,22 +75,27 @@ public class Main {
         Map<String, Object> overrides = new HashMap<>();
         overrides.put("akka.remote.artery.canonical.port", port);
 
+        // Order workers each hold a thread of the blocking dispatcher while they call the Users or Wallets service,
+        // so it gets a thread for every worker the two pools can grow to
+        Config workerPools = ConfigFactory.load().getConfig("marketplace-app.worker-pools");
+        overrides.put("marketplace-app.dispatchers.blocking.thread-pool-executor.fixed-pool-size",
+                workerPools.getInt("post-order.max-workers") + workerPools.getInt("delete-order.max-workers"));
+
         // Port for HTTP server from config file
         Config conf = ConfigFactory.parseMap(overrides).withFallback(ConfigFactory.load());
 
-        // Service keys for Group Routers of PostOrderActors and DeleteOrderActors
+        // Service keys for Group Routers of the nodes' PostOrderActor and DeleteOrderActor pools
         ServiceKey<PostOrderActor.Command> postOrderActorSK = ServiceKey.create(PostOrderActor.Command.class, "PostOrderActorSK");
         ServiceKey<DeleteOrderActor.Command> deleteOrderActorSK = ServiceKey.create(DeleteOrderActor.Command.class, "DeleteOrderActorSK");
 
-        // Number of PostOrderActors and DeleteOrderActors to spawn per node
-        Integer NUM_POST_ORDER_ACTORS = 50;
-        Integer NUM_DELETE_ORDER_ACTORS = 50;
-
         // Root Actor Behavior
         Behavior<NotUsed> rootBehavior = Behaviors.setup(context -> {
             // Sharding Objects
             Cluster.get(context.getSystem());
             ClusterSharding sharding = ClusterSharding.get(context.getSystem());
+
+            // Periodic summary of hot-path activity, in place of a log line per message
+            ActivityLog.scheduleSummaries(context.getSystem());
             
             // Initialize Product loading code
             ProductLoader productLoader = new ProductLoader();
@@ -92,15 +111,21 @@ public class Main {
                 // If product with productId not found, use a null product
                 if (product == null) product = new Product();
                 return ProductActor.create(productId);
-            }));
+            }).withEntityProps(actorProps(conf, "product-actor")));
+
+            // Sharding initialization for OrderActors, which passivate once their order is archived
+            sharding.init(Entity.of(OrderActor.ENTITY_TYPE_KEY, entityContext -> OrderActor.create(entityContext.getShard(), entityContext.getEntityId()))
+                    .withEntityProps(actorProps(conf, "order-actor")));
 
-            // Sharding initialization for OrderActors
-            sharding.init(Entity.of(OrderActor.ENTITY_TYPE_KEY, entityContext -> OrderActor.create()));
+            // Sharding initialization for IdempotencyActors, which passivate themselves once their entry expires
+            sharding.init(Entity.of(IdempotencyActor.ENTITY_TYPE_KEY, entityContext -> IdempotencyActor.create(entityContext.getShard()))
+                    .withEntityProps(actorProps(conf, "idempotency-actor")));
 
             // Primary Node Initialization
             if (port == 8083) {
                 // Create the Gateway actor
-                ActorRef<Gateway.Command> gatewayActor = context.spawn(Gateway.create(sharding, postOrderActorSK, deleteOrderActorSK), "Gateway");
+                ActorRef<Gateway.Command> gatewayActor = context.spawn(Gateway.create(sharding, postOrderActorSK, deleteOrderActorSK), "Gateway",
+                        actorProps(conf, "gateway"));
 
                 // Spawn the first half of product actors in the primary node
                 for (Integer i = 0; i < (productIds.size() / 2); i++) {
@@ -125,19 +150,20 @@ public class Main {
                     EntityRef<ProductActor.Command> productActor = sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + productId);
                     productActor.tell(new ProductActor.InitializeProduct(productLoader.products.get(productId)));
                 }
-            }
 
-            // Spawn and register PostOrderActors
-            for (Integer i = 0; i < NUM_POST_ORDER_ACTORS; i++) {
-              ActorRef<PostOrderActor.Command> postOrderActor = context.spawn(PostOrderActor.create(), "postOrderActor" + i);
-              context.getSystem().receptionist().tell(Receptionist.register(postOrderActorSK, postOrderActor));
+                // Secondary nodes have no routes, but can expose their own metrics and traces
+                Integer metricsPort = conf.getInt("marketplace-app.metrics.secondary-http-port");
+                if (metricsPort > 0)
+                    startHttpServer(concat(Routes.metricsRoute(), Routes.tracesRoute()), context.getSystem(), metricsPort);
             }
 
-            // Spawn and register DeleteOrderActors
-            for (Integer i = 0; i < NUM_DELETE_ORDER_ACTORS; i++) {
-              ActorRef<DeleteOrderActor.Command> deleteOrderActor = context.spawn(DeleteOrderActor.create(), "deleteOrderActor" + i);
-              context.getSystem().receptionist().tell(Receptionist.register(deleteOrderActorSK, deleteOrderActor));
-            }
+            // Spawn the pools of PostOrderActors and DeleteOrderActors, which register with the receptionist and resize with load
+            context.spawn(WorkerPool.create("post-order", "postOrderActor", PostOrderActor.Command.class, postOrderActorSK,
+                    load -> PostOrderActor.create(new UsersClient(), new WalletsClient(), load),
+                    actorProps(conf, "post-order-actor"), workerPools), "postOrderPool");
+            context.spawn(WorkerPool.create("delete-order", "deleteOrderActor", DeleteOrderActor.Command.class, deleteOrderActorSK,
+                    load -> DeleteOrderActor.create(new WalletsClient(), load),
+                    actorProps(conf, "delete-order-actor"), workerPools), "deleteOrderPool");
 
             return Behaviors.empty();
         });
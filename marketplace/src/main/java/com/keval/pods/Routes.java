@@ -1,29 +1,63 @@
 package com.keval.pods;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
+import akka.NotUsed;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Scheduler;
 import akka.actor.typed.javadsl.AskPattern;
 import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.marshalling.sse.EventStreamMarshalling;
 
 import static akka.http.javadsl.server.Directives.*;
 
+import akka.http.javadsl.model.ContentType;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpCharsets;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.MediaTypes;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.EntityTag;
+import akka.http.javadsl.model.headers.RetryAfter;
+import akka.http.javadsl.model.sse.ServerSentEvent;
+import akka.http.javadsl.server.ExceptionHandler;
 import akka.http.javadsl.server.PathMatchers;
 import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.StringUnmarshallers;
+import akka.stream.javadsl.Framing;
+import akka.stream.javadsl.FramingTruncation;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
 
+import com.keval.pods.admission.AdaptiveLimiter;
+import com.keval.pods.events.ChangeFeed;
+import com.keval.pods.events.OrderStatusChanged;
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.LatencyHistogram;
+import com.keval.pods.metrics.Metrics;
 import com.keval.pods.order.CreateOrderRequest;
 import com.keval.pods.order.Order;
+import com.keval.pods.order.OrderResult;
+import com.keval.pods.order.StreamedOrderResult;
 import com.keval.pods.order.UpdateOrderRequest;
 import com.keval.pods.order.Order.OrderItem;
-import com.keval.pods.product.Product;
+import com.keval.pods.product.ProductJson;
+import com.keval.pods.trace.Tracing;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.Config;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,38 +65,211 @@ public class Routes {
 
     private final static Logger log = LoggerFactory.getLogger(Routes.class);
 
+    // Ask latency and ask timeouts per Gateway command
+    private static final GatewayAskMetrics getProductAsks = new GatewayAskMetrics("GetProduct");
+    private static final GatewayAskMetrics createOrderAsks = new GatewayAskMetrics("CreateOrder");
+    private static final GatewayAskMetrics getOrderAsks = new GatewayAskMetrics("GetOrder");
+    private static final GatewayAskMetrics updateOrderAsks = new GatewayAskMetrics("UpdateOrder");
+    private static final GatewayAskMetrics cancelOrderAsks = new GatewayAskMetrics("CancelOrder");
+    private static final GatewayAskMetrics getProductsAsks = new GatewayAskMetrics("GetProducts");
+    private static final GatewayAskMetrics createOrdersAsks = new GatewayAskMetrics("CreateOrders");
+
+    // 503 with Retry-After for requests shed by a limiter
+    private static final ExceptionHandler overloadHandler = ExceptionHandler.newBuilder()
+            .match(AdaptiveLimiter.Overloaded.class, overloaded -> respondWithHeader(
+                    RetryAfter.create(Math.max(1, overloaded.retryAfter.toSeconds())),
+                    () -> complete(StatusCodes.SERVICE_UNAVAILABLE, "Service overloaded, retry later.")))
+            .build();
+
+    private static final class GatewayAskMetrics {
+        final LatencyHistogram latency;
+        final Counter timeouts;
+
+        GatewayAskMetrics(String command) {
+            this.latency = Metrics.histogram("marketplace_gateway_ask_seconds", "Latency of asks to the Gateway", "command", command);
+            this.timeouts = Metrics.counter("marketplace_ask_timeouts_total", "Asks to the Gateway that timed out", "command", command);
+        }
+
+        <T> CompletionStage<T> record(long startNanos, CompletionStage<T> ask) {
+            return ask.whenComplete((result, exception) -> {
+                latency.observeSince(startNanos);
+                if (exception instanceof TimeoutException || (exception != null && exception.getCause() instanceof TimeoutException))
+                    timeouts.increment();
+            });
+        }
+    }
+
+    // Idempotency keys become part of an entity ID, so keep them short
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    // Most traces GET /traces/orders returns; also its default
+    private static final int MAX_TRACES = 100;
+
+    // POST /orders/stream reads and writes one JSON document per line
+    private static final ContentType NDJSON = ContentTypes.create(MediaTypes.applicationWithFixedCharset("x-ndjson", HttpCharsets.UTF_8));
+    private static final ByteString NEWLINE = ByteString.fromString("\n");
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+
     private final ActorRef<Gateway.Command> gatewayActor;
     private final Duration askTimeout;
     private final Scheduler scheduler;
 
+    // Admission control: in-flight asks per endpoint, so overload is answered with a fast 503 instead of an ask timeout
+    private final boolean admissionEnabled;
+    private final AdaptiveLimiter getProductLimiter;
+    private final AdaptiveLimiter createOrderLimiter;
+    private final AdaptiveLimiter getOrderLimiter;
+    private final AdaptiveLimiter updateOrderLimiter;
+    private final AdaptiveLimiter cancelOrderLimiter;
+    private final AdaptiveLimiter getProductsLimiter;
+    private final AdaptiveLimiter createOrdersLimiter;
+
+    // Maximum number of products or orders in one batch request
+    private final int batchMaxSize;
+
+    // Orders of one POST /orders/stream in flight at a time, and the longest line accepted
+    private final int streamParallelism;
+    private final int streamMaxLineLength;
+
+    // Stock and order status changes for the SSE endpoints, and the heartbeat interval keeping idle streams open
+    private final ChangeFeed changeFeed;
+    private final Duration sseKeepAlive;
+
     public Routes(ActorSystem<?> system, ActorRef<Gateway.Command> gatewayActor) {
         this.gatewayActor = gatewayActor;
         this.scheduler = system.scheduler();
         this.askTimeout = system.settings().config().getDuration("marketplace-app.routes.ask-timeout");
+
+        Config admission = system.settings().config().getConfig("marketplace-app.routes.admission");
+        this.admissionEnabled = admission.getBoolean("enabled");
+        this.getProductLimiter = new AdaptiveLimiter("GetProduct", admission);
+        this.createOrderLimiter = new AdaptiveLimiter("CreateOrder", admission);
+        this.getOrderLimiter = new AdaptiveLimiter("GetOrder", admission);
+        this.updateOrderLimiter = new AdaptiveLimiter("UpdateOrder", admission);
+        this.cancelOrderLimiter = new AdaptiveLimiter("CancelOrder", admission);
+        this.getProductsLimiter = new AdaptiveLimiter("GetProducts", admission);
+        this.createOrdersLimiter = new AdaptiveLimiter("CreateOrders", admission);
+
+        this.batchMaxSize = system.settings().config().getInt("marketplace-app.batch.max-size");
+        this.streamParallelism = system.settings().config().getInt("marketplace-app.order-stream.parallelism");
+        this.streamMaxLineLength = system.settings().config().getBytes("marketplace-app.order-stream.max-line-length").intValue();
+
+        this.changeFeed = new ChangeFeed(system);
+        this.sseKeepAlive = system.settings().config().getDuration("marketplace-app.change-feed.keep-alive");
     }
 
-    private CompletionStage<Product> getProduct(int productId) {
-        return AskPattern.ask(gatewayActor, ref -> new Gateway.GetProduct(productId, ref), askTimeout, scheduler);
+    private <T> CompletionStage<T> admit(AdaptiveLimiter limiter, Supplier<CompletionStage<T>> ask) {
+        return admissionEnabled ? limiter.submit(ask) : ask.get();
     }
 
-    private CompletionStage<Order> createOrder(CreateOrderRequest orderRequest) {
+    private CompletionStage<ProductJson> getProduct(int productId) {
+        return admit(getProductLimiter, () -> getProductAsks.record(System.nanoTime(),
+                AskPattern.ask(gatewayActor, ref -> new Gateway.GetProduct(productId, ref), askTimeout, scheduler)));
+    }
+
+    private CompletionStage<Order> createOrder(CreateOrderRequest orderRequest, String idempotencyKey) {
         Order order = convertCreateOrderRequestToOrder(orderRequest);
-        return AskPattern.ask(gatewayActor, ref -> new Gateway.CreateOrder(order, ref), askTimeout, scheduler);
+        return admit(createOrderLimiter, () -> createOrderAsks.record(System.nanoTime(),
+                AskPattern.ask(gatewayActor, ref -> new Gateway.CreateOrder(order, idempotencyKey, ref), askTimeout, scheduler)));
     }
 
     private CompletionStage<Order> getOrder(int orderId) {
-        return AskPattern.ask(gatewayActor, ref -> new Gateway.GetOrder(orderId, ref), askTimeout, scheduler);
+        return admit(getOrderLimiter, () -> getOrderAsks.record(System.nanoTime(),
+                AskPattern.ask(gatewayActor, ref -> new Gateway.GetOrder(orderId, ref), askTimeout, scheduler)));
     }
 
     private CompletionStage<Boolean> deleteOrder(int orderId) {
-        //print
-        System.out.println("Deleting order with ID: " + orderId);
-        return AskPattern.ask(gatewayActor, ref -> new Gateway.CancelOrder(orderId, ref), askTimeout, scheduler);
+        log.debug("Deleting order with ID: {}", orderId);
+        return admit(cancelOrderLimiter, () -> cancelOrderAsks.record(System.nanoTime(),
+                AskPattern.ask(gatewayActor, ref -> new Gateway.CancelOrder(orderId, ref), askTimeout, scheduler)));
     }
 
     private CompletionStage<Boolean> updateOrder(Integer orderId, UpdateOrderRequest orderRequest) {
         Order order = convertUpdateOrderRequestToOrder(orderRequest);
-        return AskPattern.ask(gatewayActor, ref -> new Gateway.UpdateOrder(orderId, order, ref), askTimeout, scheduler);
+        return admit(updateOrderLimiter, () -> updateOrderAsks.record(System.nanoTime(),
+                AskPattern.ask(gatewayActor, ref -> new Gateway.UpdateOrder(orderId, order, ref), askTimeout, scheduler)));
+    }
+
+    private CompletionStage<List<ProductJson>> getProducts(List<Integer> productIds) {
+        return admit(getProductsLimiter, () -> getProductsAsks.record(System.nanoTime(),
+                AskPattern.ask(gatewayActor, ref -> new Gateway.GetProducts(productIds, ref), askTimeout, scheduler)));
+    }
+
+    private CompletionStage<List<Order>> createOrders(CreateOrderRequest[] orderRequests) {
+        List<Order> orders = new ArrayList<>(orderRequests.length);
+        for (CreateOrderRequest orderRequest : orderRequests)
+            orders.add(convertCreateOrderRequestToOrder(orderRequest));
+        return admit(createOrdersLimiter, () -> createOrdersAsks.record(System.nanoTime(),
+                AskPattern.ask(gatewayActor, ref -> new Gateway.CreateOrders(orders, ref), askTimeout, scheduler)));
+    }
+
+    // One line of POST /orders/stream, placed like POST /orders; the stream itself bounds concurrency, so it skips admission control
+    private CompletionStage<StreamedOrderResult> streamOrder(long line, ByteString json) {
+        CreateOrderRequest orderRequest;
+        try {
+            orderRequest = jsonMapper.readValue(json.toArray(), CreateOrderRequest.class);
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(new StreamedOrderResult(line, StatusCodes.BAD_REQUEST.intValue(), null));
+        }
+
+        Order order = convertCreateOrderRequestToOrder(orderRequest);
+        return createOrderAsks.record(System.nanoTime(),
+                AskPattern.ask(gatewayActor, (ActorRef<Order> ref) -> new Gateway.CreateOrder(order, null, ref), askTimeout, scheduler))
+                .handle((placed, failure) -> {
+                    if (failure != null)
+                        return new StreamedOrderResult(line, StatusCodes.GATEWAY_TIMEOUT.intValue(), null);
+                    if (placed.order_id == null)
+                        return new StreamedOrderResult(line, StatusCodes.BAD_REQUEST.intValue(), null);
+                    return new StreamedOrderResult(line, StatusCodes.CREATED.intValue(), placed);
+                });
+    }
+
+    // Server-sent events with the JSON of each change as data
+    private Route completeWithEvents(Source<?, ?> changes, String eventType) {
+        Source<ServerSentEvent, ?> events = changes
+                .map(change -> ServerSentEvent.create(jsonMapper.writeValueAsString(change), eventType))
+                .keepAlive(sseKeepAlive, ServerSentEvent::heartbeat);
+        return completeOK(events, EventStreamMarshalling.toEventStream());
+    }
+
+    // JSON array of the existing products, copied from their encoded bytes
+    private static ByteString jsonArray(List<ProductJson> products) {
+        ByteStringBuilder array = ByteString.createBuilder();
+        array.putByte((byte) '[');
+        boolean first = true;
+        for (ProductJson product : products) {
+            if (!product.exists())
+                continue;
+            if (!first)
+                array.putByte((byte) ',');
+            array.putBytes(product.json());
+            first = false;
+        }
+        array.putByte((byte) ']');
+        return array.result();
+    }
+
+    // Comma-separated ids of the products whose ask failed or missed the batch deadline, null if there are none
+    private static String missedIds(List<ProductJson> products) {
+        StringBuilder missed = null;
+        for (ProductJson product : products) {
+            if (!product.isMissed())
+                continue;
+            missed = missed == null ? new StringBuilder() : missed.append(',');
+            missed.append(product.product_id());
+        }
+        return missed == null ? null : missed.toString();
+    }
+
+    // Parses the ids parameter of GET /products?ids=1,2,3, null if it isn't a list of integers
+    private static List<Integer> parseIds(String ids) {
+        List<Integer> productIds = new ArrayList<>();
+        try {
+            for (String id : ids.split(","))
+                productIds.add(Integer.parseInt(id.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return productIds;
     }
 
     // Utitility function: Concert CreateOrderRequest -> Order
@@ -94,33 +301,129 @@ public class Routes {
         return order;
     }
 
+    // GET /metrics, served on every node so each node's actors, mailboxes and clients can be scraped
+    public static Route metricsRoute() {
+        return path("metrics", () -> get(() ->
+                complete(HttpEntities.create(ContentTypes.TEXT_PLAIN_UTF8, Metrics.scrape()))));
+    }
+
+    // GET /traces/orders?order_id=&limit=, most recent sampled orders placed through this node first
+    // Non-numeric parameters are rejected with 400; limit is capped, as each trace scans the span buffer
+    public static Route tracesRoute() {
+        return path(PathMatchers.segment("traces").slash("orders"), () -> get(() ->
+                parameterOptional(StringUnmarshallers.INTEGER, "order_id", orderId -> parameterOptional(StringUnmarshallers.INTEGER, "limit", limit -> {
+                    int maxTraces = limit.orElse(MAX_TRACES);
+                    if (maxTraces < 1)
+                        return complete(StatusCodes.BAD_REQUEST, "limit must be positive");
+                    return complete(StatusCodes.OK, Tracing.recentOrders(orderId.orElse(null), Math.min(maxTraces, MAX_TRACES)), Jackson.marshaller());
+                }))));
+    }
+
     public Route userRoutes() {
-        return concat(
-                // GET /products/{productId}
+        return handleExceptions(overloadHandler, () -> concat(
+                metricsRoute(),
+                tracesRoute(),
                 pathPrefix("products", () -> concat(
+                        // GET /products/stream, SSE of stock changes across all products
+                        path("stream", () -> get(() -> completeWithEvents(changeFeed.stockChanges(), "stock"))),
+                        // GET /products?ids=1,2,3, the existing products among ids in request order
+                        // 504 naming the ids to retry if any product couldn't be read in time, rather than leaving it out as missing
+                        pathEndOrSingleSlash(() -> get(() -> parameter("ids", ids -> {
+                            List<Integer> productIds = parseIds(ids);
+                            if (productIds == null || productIds.size() > batchMaxSize)
+                                return complete(StatusCodes.BAD_REQUEST, "ids must be at most " + batchMaxSize + " comma-separated product IDs");
+
+                            return onSuccess(getProducts(productIds), products -> {
+                                String missedIds = missedIds(products);
+                                if (missedIds != null)
+                                    return complete(StatusCodes.GATEWAY_TIMEOUT, "Products not read in time, retry ids=" + missedIds);
+                                return complete(HttpResponse.create().withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON, jsonArray(products))));
+                            });
+                        }))),
+                        // GET /products/{productId}
                         path(PathMatchers.segment(), (String id) -> get(() -> {
                             Integer productId = Integer.parseInt(id);
                             return onSuccess(getProduct(productId), product -> {
-                                if (product.id != null) {
-                                    return complete(StatusCodes.OK, product, Jackson.marshaller());
+                                // Bytes encoded by the ProductActor, answered with 304 if the client's ETag still matches
+                                if (product.exists()) {
+                                    return conditional(EntityTag.create(product.etag(), false), () ->
+                                            complete(HttpResponse.create().withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON,
+                                                    ByteString.fromArrayUnsafe(product.json())))));
                                 } else {
                                     return complete(StatusCodes.NOT_FOUND, "Product not found.");
                                 }
                             });
                         })))),
                 pathPrefix("orders", () -> concat(
-                        // POST /orders
-                        post(() -> entity(Jackson.unmarshaller(CreateOrderRequest.class),
-                                orderRequest -> onSuccess(createOrder(orderRequest), order -> {
+                        // POST /orders/stream, NDJSON CreateOrderRequests in and NDJSON StreamedOrderResults out as orders complete
+                        // The body is only read as fast as orders are placed, so TCP backpressure throttles the producer
+                        path("stream", () -> post(() -> withoutRequestTimeout(() -> withoutSizeLimit(() -> extractDataBytes(body ->
+                                complete(HttpResponse.create().withEntity(HttpEntities.create(NDJSON, body
+                                        .via(Framing.delimiter(NEWLINE, streamMaxLineLength, FramingTruncation.ALLOW))
+                                        .zipWithIndex()
+                                        .filter(line -> !line.first().utf8String().isBlank())
+                                        .mapAsyncUnordered(streamParallelism, line -> streamOrder(line.second() + 1, line.first()))
+                                        .map(result -> ByteString.fromArray(jsonMapper.writeValueAsBytes(result)).concat(NEWLINE)))))))))),
+                        // POST /orders/batch, sagas run concurrently and each order gets its own result
+                        path("batch", () -> post(() -> entity(Jackson.unmarshaller(CreateOrderRequest[].class), orderRequests -> {
+                            if (orderRequests.length == 0 || orderRequests.length > batchMaxSize)
+                                return complete(StatusCodes.BAD_REQUEST, "A batch must have 1 to " + batchMaxSize + " orders");
+
+                            return onSuccess(createOrders(orderRequests), orders -> {
+                                List<OrderResult> results = new ArrayList<>(orders.size());
+                                for (Order order : orders) {
+                                    if (order.order_id == null)
+                                        results.add(new OrderResult(StatusCodes.BAD_REQUEST.intValue(), null));
+                                    else if (order.status == null)
+                                        results.add(new OrderResult(StatusCodes.GATEWAY_TIMEOUT.intValue(), order));
+                                    else
+                                        results.add(new OrderResult(StatusCodes.CREATED.intValue(), order));
+                                }
+                                return complete(StatusCodes.OK, results, Jackson.marshaller());
+                            });
+                        }))),
+                        // POST /orders, retries carrying the same Idempotency-Key get the original order back
+                        post(() -> optionalHeaderValueByName("Idempotency-Key", idempotencyKey -> {
+                            if (idempotencyKey.isPresent() && (idempotencyKey.get().isEmpty() || idempotencyKey.get().length() > MAX_IDEMPOTENCY_KEY_LENGTH))
+                                return complete(StatusCodes.BAD_REQUEST, "Idempotency-Key must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+
+                            return entity(Jackson.unmarshaller(CreateOrderRequest.class),
+                                orderRequest -> onSuccess(createOrder(orderRequest, idempotencyKey.orElse(null)), order -> {
                                     if (order.order_id != null) {
-                                        log.info("Order created: {}", order);
+                                        log.debug("Order created: {}", order);
                                         return complete(StatusCodes.CREATED, order, Jackson.marshaller());
                                     }
                                     else {
-                                        log.info("Order creation failed: {}", orderRequest);
+                                        log.debug("Order creation failed: {}", orderRequest);
                                         return complete(StatusCodes.BAD_REQUEST, "Order creation failed");
                                     }
-                                }))),
+                                }));
+                        })),
+                        // GET /orders/{orderId}/events, SSE of the order's current status and then its transitions,
+                        // ending after it is delivered or cancelled
+                        path(PathMatchers.segment().slash("events"), (String id) -> get(() -> {
+                            int orderId = Integer.parseInt(id);
+                            // Subscribed before reading the order, so a change made in between is held rather than lost
+                            Source<OrderStatusChanged, NotUsed> subscription = changeFeed.subscribeToOrderStatus(orderId);
+                            CompletionStage<Order> read = getOrder(orderId).whenComplete((order, e) -> {
+                                if (e != null)
+                                    changeFeed.cancel(subscription);
+                            });
+                            return onSuccess(read, order -> {
+                                if (order.order_id == null) {
+                                    changeFeed.cancel(subscription);
+                                    return complete(StatusCodes.NOT_FOUND, "Order not found");
+                                }
+
+                                OrderStatusChanged current = new OrderStatusChanged(order.order_id, order.status);
+                                if (current.isFinal()) {
+                                    changeFeed.cancel(subscription);
+                                    return completeWithEvents(Source.single(current), "status");
+                                }
+                                // The subscription may hold the status just read, or one it replaced; skip those
+                                return completeWithEvents(Source.single(current).concat(subscription.filter(change -> change.isNewerThan(current))), "status");
+                            });
+                        })),
                         path(PathMatchers.segment(), (String id) -> concat(
                                 // GET /orders/{orderId}
                                 get(() -> {
@@ -138,12 +441,12 @@ public class Routes {
                                     int orderId = Integer.parseInt(id);
                                     return onSuccess(deleteOrder(orderId), successful -> {
                                             if (successful){
-                                              System.out.println("Order deleted: "+ orderId+ ", Returning 200");
+                                              log.debug("Order deleted: {}, returning 200", orderId);
                                               return complete(StatusCodes.OK);
                                             }
                                             else{
                                               // return 400
-                                              System.out.println("Order deletion failed: "+ orderId+ ", Retuning 400"); 
+                                              log.debug("Order deletion failed: {}, returning 400", orderId);
                                               return complete(StatusCodes.BAD_REQUEST);
                                             }
                                     });
@@ -155,6 +458,6 @@ public class Routes {
                                               return complete(StatusCodes.OK);
                                             else
                                               return complete(StatusCodes.BAD_REQUEST);
-                                        }))))))));
+                                        })))))))));
     }
 }
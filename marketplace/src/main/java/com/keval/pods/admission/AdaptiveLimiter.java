@@ -0,0 +1,105 @@
+package com.keval.pods.admission;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.Gauge;
+import com.keval.pods.metrics.Metrics;
+import com.typesafe.config.Config;
+
+// AIMD limit on the asks in flight for one endpoint
+// Each ask that completes within latency-target while the limit is in use grows the limit by 1/limit (about +1 per round trip);
+// an ask that is slower or times out shrinks it by backoff-ratio, at most once per latency-target so one burst
+// of slow replies doesn't collapse it to min-limit. Asks over the limit fail immediately with Overloaded
+public class AdaptiveLimiter {
+
+    // Thrown (as a failed stage) when the endpoint is saturated; carries no stack trace since it's expected under load
+    public static final class Overloaded extends RuntimeException {
+        public final String endpoint;
+        public final Duration retryAfter;
+
+        Overloaded(String endpoint, Duration retryAfter) {
+            super("Too many requests in flight for " + endpoint, null, false, false);
+            this.endpoint = endpoint;
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    private final double minLimit;
+    private final double maxLimit;
+    private final long latencyTargetNanos;
+    private final double backoffRatio;
+    private final Overloaded overloaded;
+
+    private final Gauge inFlightGauge;
+    private final Counter rejected;
+
+    // Guarded by this
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseNanos;
+
+    // Settings from marketplace-app.routes.admission
+    public AdaptiveLimiter(String endpoint, Config config) {
+        this.limit = config.getInt("initial-limit");
+        this.minLimit = config.getInt("min-limit");
+        this.maxLimit = config.getInt("max-limit");
+        this.latencyTargetNanos = config.getDuration("latency-target").toNanos();
+        this.backoffRatio = config.getDouble("backoff-ratio");
+        this.overloaded = new Overloaded(endpoint, config.getDuration("retry-after"));
+        this.lastDecreaseNanos = System.nanoTime() - latencyTargetNanos;
+
+        this.inFlightGauge = Metrics.gauge("marketplace_admission_in_flight", "Asks admitted and not yet completed", "endpoint", endpoint);
+        this.rejected = Metrics.counter("marketplace_admission_rejected_total", "Requests shed with 503 because the endpoint was saturated", "endpoint", endpoint);
+    }
+
+    // Runs the ask if there is room under the limit, otherwise returns a stage already failed with Overloaded
+    public <T> CompletionStage<T> submit(Supplier<CompletionStage<T>> ask) {
+        if (!tryAcquire()) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(overloaded);
+        }
+
+        inFlightGauge.increment();
+        long startNanos = System.nanoTime();
+        return ask.get().whenComplete((result, exception) -> {
+            inFlightGauge.decrement();
+            release(System.nanoTime() - startNanos, isTimeout(exception));
+        });
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit)
+            return false;
+        inFlight++;
+        return true;
+    }
+
+    private synchronized void release(long latencyNanos, boolean timedOut) {
+        // Only grow while the limit is actually being used, otherwise an idle endpoint drifts to max-limit
+        boolean limitInUse = inFlight * 2 >= limit;
+        inFlight--;
+
+        long now = System.nanoTime();
+        if (timedOut || latencyNanos > latencyTargetNanos) {
+            if (now - lastDecreaseNanos >= latencyTargetNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseNanos = now;
+            }
+        } else if (limitInUse) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    private static boolean isTimeout(Throwable exception) {
+        return exception instanceof TimeoutException || (exception != null && exception.getCause() instanceof TimeoutException);
+    }
+}
@@ -0,0 +1,229 @@
+package com.keval.pods.archive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.Metrics;
+import com.keval.pods.order.CompactOrder;
+import com.typesafe.config.Config;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Extension;
+import akka.actor.typed.ExtensionId;
+
+// Node-local store of orders that can no longer change (delivered or cancelled), so their OrderActors can passivate
+// Orders are appended to memory-mapped segment files of `segment-size` bytes, each record a varint length followed by
+// varint (zigzag) fields, and found again through an in-memory order_id index
+// Like the rest of the marketplace's state it doesn't outlive the node: the node's directory is cleared on startup
+public final class OrderArchive implements Extension {
+    private final static Logger log = LoggerFactory.getLogger(OrderArchive.class);
+
+    public static final class Id extends ExtensionId<OrderArchive> {
+        private static final Id instance = new Id();
+
+        private Id() {}
+
+        @Override
+        public OrderArchive createExtension(ActorSystem<?> system) {
+            return new OrderArchive(system);
+        }
+    }
+
+    public static OrderArchive get(ActorSystem<?> system) {
+        return Id.instance.apply(system);
+    }
+
+    private static final Counter appendedOrders = Metrics.counter("marketplace_order_archive_appends_total", "Terminal orders moved to the archive");
+    private static final Counter appendedBytes = Metrics.counter("marketplace_order_archive_bytes_total", "Bytes appended to archive segments");
+    private static final Counter archiveReads = Metrics.counter("marketplace_order_archive_reads_total", "Orders read back from the archive");
+    private static final Counter oversizedOrders = Metrics.counter("marketplace_order_archive_oversized_total", "Terminal orders too large for an archive segment, kept by their OrderActor");
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+
+    // Guarded by this
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final OrderIndex index = new OrderIndex(1 << 16);
+    private int position;
+    private byte[] scratch = new byte[256];
+    // Written under the lock, read without it
+    private volatile int highestArchivedId = Integer.MIN_VALUE;
+
+    private OrderArchive(ActorSystem<?> system) {
+        Config config = system.settings().config().getConfig("marketplace-app.order-archive");
+        this.enabled = config.getBoolean("enabled");
+        this.segmentSize = config.getBytes("segment-size").intValue();
+        this.directory = Paths.get(config.getString("directory"),
+                system.name() + "-" + system.settings().config().getInt("akka.remote.artery.canonical.port"));
+        if (enabled)
+            clearDirectory();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    // False if the order's record is larger than a whole segment; the caller has to keep such an order itself
+    public synchronized boolean append(CompactOrder order) {
+        int length = encode(order);
+        int recordLength = varintSize(length) + length;
+        if (recordLength > segmentSize) {
+            log.warn("Order {} takes {} bytes, more than an archive segment of {}, not archived", order.order_id, recordLength, segmentSize);
+            oversizedOrders.increment();
+            return false;
+        }
+        if (segments.isEmpty() || position + recordLength > segmentSize)
+            newSegment();
+
+        MappedByteBuffer segment = segments.get(segments.size() - 1);
+        int offset = position;
+        position = putVarint(segment, position, length);
+        segment.put(position, scratch, 0, length);
+        position += length;
+
+        index.put(order.order_id, (long) (segments.size() - 1) << 32 | offset);
+        if (order.order_id > highestArchivedId)
+            highestArchivedId = order.order_id;
+        appendedOrders.increment();
+        appendedBytes.add(recordLength);
+        return true;
+    }
+
+    // The archived order, or null if it was never archived on this node
+    // Order IDs grow, so the OrderActor of a new order finds its ID above every archived one without taking the lock
+    public CompactOrder read(int orderId) {
+        if (orderId > highestArchivedId)
+            return null;
+        return readArchived(orderId);
+    }
+
+    private synchronized CompactOrder readArchived(int orderId) {
+        long location = index.get(orderId);
+        if (location < 0)
+            return null;
+        archiveReads.increment();
+
+        MappedByteBuffer segment = segments.get((int) (location >>> 32));
+        int[] cursor = {(int) location};
+        readVarint(segment, cursor); // record length
+        int order_id = readSigned(segment, cursor);
+        int user_id = readSigned(segment, cursor);
+        int total_price = readSigned(segment, cursor);
+        int status = readVarint(segment, cursor);
+        int itemCount = readVarint(segment, cursor);
+        int[] product_ids = new int[itemCount];
+        int[] quantities = new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            product_ids[i] = readSigned(segment, cursor);
+            quantities[i] = readSigned(segment, cursor);
+        }
+        return new CompactOrder(order_id, user_id, total_price, status, product_ids, quantities);
+    }
+
+    // Encodes the order's fields into scratch, returning the length
+    private int encode(CompactOrder order) {
+        int maxLength = 5 * (5 + 2 * order.product_ids.length);
+        if (scratch.length < maxLength)
+            scratch = new byte[maxLength];
+
+        int length = putSigned(scratch, 0, order.order_id);
+        length = putSigned(scratch, length, order.user_id);
+        length = putSigned(scratch, length, order.total_price);
+        length = putVarint(scratch, length, order.status);
+        length = putVarint(scratch, length, order.product_ids.length);
+        for (int i = 0; i < order.product_ids.length; i++) {
+            length = putSigned(scratch, length, order.product_ids[i]);
+            length = putSigned(scratch, length, order.quantities[i]);
+        }
+        return length;
+    }
+
+    private void newSegment() {
+        Path file = directory.resolve(String.format("segment-%06d.dat", segments.size()));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+            position = 0;
+            log.info("Opened order archive segment {}", file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create order archive segment " + file, e);
+        }
+    }
+
+    private void clearDirectory() {
+        try {
+            if (Files.exists(directory)) {
+                try (Stream<Path> files = Files.walk(directory)) {
+                    for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                        if (!file.equals(directory))
+                            Files.delete(file);
+                }
+            }
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare order archive directory " + directory, e);
+        }
+    }
+
+    // Unsigned LEB128 varints; signed fields are zigzag-encoded first so small negatives stay short
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int putVarint(byte[] bytes, int at, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[at++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[at++] = (byte) value;
+        return at;
+    }
+
+    private static int putVarint(MappedByteBuffer buffer, int at, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put(at++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put(at++, (byte) value);
+        return at;
+    }
+
+    private static int putSigned(byte[] bytes, int at, int value) {
+        return putVarint(bytes, at, (value << 1) ^ (value >> 31));
+    }
+
+    private static int readVarint(MappedByteBuffer buffer, int[] cursor) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(cursor[0]++);
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    private static int readSigned(MappedByteBuffer buffer, int[] cursor) {
+        int value = readVarint(buffer, cursor);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
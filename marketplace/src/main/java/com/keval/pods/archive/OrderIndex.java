@@ -0,0 +1,75 @@
+package com.keval.pods.archive;
+
+import java.util.Arrays;
+
+// order_id -> archive location, open addressing with linear probing over two primitive arrays
+// Locations are never negative, so -1 marks an empty slot; entries are never removed
+final class OrderIndex {
+
+    private static final long EMPTY = -1;
+
+    private int[] keys;
+    private long[] values;
+    private int size;
+
+    OrderIndex(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new long[capacity];
+        Arrays.fill(values, EMPTY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == EMPTY)
+                return EMPTY;
+            if (keys[slot] == key)
+                return values[slot];
+        }
+    }
+
+    void put(int key, long value) {
+        // Keep the load factor at or below one half
+        if ((size + 1) * 2 > keys.length)
+            resize();
+        if (insert(keys, values, key, value))
+            size++;
+    }
+
+    private static boolean insert(int[] keys, long[] values, int key, long value) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                return true;
+            }
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return false;
+            }
+        }
+    }
+
+    private void resize() {
+        int[] newKeys = new int[keys.length * 2];
+        long[] newValues = new long[values.length * 2];
+        Arrays.fill(newValues, EMPTY);
+        for (int slot = 0; slot < keys.length; slot++)
+            if (values[slot] != EMPTY)
+                insert(newKeys, newValues, keys[slot], values[slot]);
+        keys = newKeys;
+        values = newValues;
+    }
+
+    // Order IDs are sequential, so spread them before masking
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
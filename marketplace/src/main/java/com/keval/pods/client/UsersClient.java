@@ -8,15 +8,33 @@ import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
 import java.util.Optional;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.keval.pods.client.model.User;
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.LatencyHistogram;
+import com.keval.pods.metrics.Metrics;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
 public class UsersClient {
+  private final static Logger log = LoggerFactory.getLogger(UsersClient.class);
+
   Config config = ConfigFactory.load();
   String baseUrl = config.getString("marketplace-app.service-urls.users");
   HttpClient httpClient = HttpClient.newHttpClient();
+
+  // Request latency and requests that got no response, by operation
+  static final LatencyHistogram getUserLatency = Metrics.histogram("marketplace_client_request_seconds",
+    "Latency of requests to the Users and Wallets services", "service", "users", "operation", "get_user");
+  static final Counter getUserErrors = Metrics.counter("marketplace_client_errors_total",
+    "Requests to the Users and Wallets services that got no response", "service", "users", "operation", "get_user");
+  static final LatencyHistogram setDiscountLatency = Metrics.histogram("marketplace_client_request_seconds",
+    "Latency of requests to the Users and Wallets services", "service", "users", "operation", "set_discount_availed");
+  static final Counter setDiscountErrors = Metrics.counter("marketplace_client_errors_total",
+    "Requests to the Users and Wallets services that got no response", "service", "users", "operation", "set_discount_availed");
   
   public Optional<User> getUserById(Integer user_id) {
     HttpRequest request = HttpRequest.newBuilder()
@@ -24,8 +42,10 @@ public class UsersClient {
       .GET()
       .build();
 
+    long start = System.nanoTime();
     try {
       HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+      getUserLatency.observeSince(start);
 
       // If request successful, deserialize and return response
       if (response.statusCode() == 200) {
@@ -34,12 +54,14 @@ public class UsersClient {
         return Optional.of(user);
       }
       else {
-        System.out.println("getUserById(" + user_id + ") failed (Code " + response.statusCode() +")");
+        log.debug("getUserById({}) failed (Code {})", user_id, response.statusCode());
         return Optional.empty();
       }
     }
     catch (Exception e) {
-      System.out.println("getUserById(" + user_id + ") failed: " + e);
+      getUserLatency.observeSince(start);
+      getUserErrors.increment();
+      log.warn("getUserById({}) failed: {}", user_id, e.toString());
       return Optional.empty();
     }
   }
@@ -47,6 +69,7 @@ public class UsersClient {
   public Integer setUserDiscountAvailed(Integer user_id, Boolean discount_availed) {
     User user = new User(user_id, discount_availed);
 
+    long start = System.nanoTime();
     try {
       // Convert user payload to JSON
       ObjectMapper objectMapper = new ObjectMapper();
@@ -61,11 +84,14 @@ public class UsersClient {
         .build();
 
       HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
+      setDiscountLatency.observeSince(start);
 
       return response.statusCode();
     }
     catch (Exception e) {
-      System.out.println("setUserDiscountAvailed(" + user_id + ", " + discount_availed +") failed: " + e);
+      setDiscountLatency.observeSince(start);
+      setDiscountErrors.increment();
+      log.warn("setUserDiscountAvailed({}, {}) failed: {}", user_id, discount_availed, e.toString());
       return 400;
     }
   }
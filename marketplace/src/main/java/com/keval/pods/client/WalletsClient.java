@@ -1,43 +1,115 @@
 package com.keval.pods.client;
 
+import java.io.IOException;
+import java.net.ConnectException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
 import java.net.http.HttpResponse;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.keval.pods.client.model.WalletTrxn;
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.LatencyHistogram;
+import com.keval.pods.metrics.Metrics;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
 public class WalletsClient {
+  private final static Logger log = LoggerFactory.getLogger(WalletsClient.class);
+
   Config config = ConfigFactory.load();
   String baseUrl = config.getString("marketplace-app.service-urls.wallets");
-  HttpClient httpClient = HttpClient.newHttpClient();
-  
+  int maxAttempts = config.getInt("marketplace-app.wallets-client.max-attempts");
+  Duration requestTimeout = config.getDuration("marketplace-app.wallets-client.request-timeout");
+  Duration backoff = config.getDuration("marketplace-app.wallets-client.backoff");
+  // All attempts and backoffs of one transaction fit in this, and never outlast the routes' ask timeout
+  Duration retryBudget = min(config.getDuration("marketplace-app.wallets-client.retry-budget"),
+    config.getDuration("marketplace-app.routes.ask-timeout"));
+  HttpClient httpClient = HttpClient.newBuilder().connectTimeout(requestTimeout).build();
+
+  // Latency of each attempt and attempts that got no response
+  static final LatencyHistogram putWalletTrxnLatency = Metrics.histogram("marketplace_client_request_seconds",
+    "Latency of requests to the Users and Wallets services", "service", "wallets", "operation", "put_wallet_trxn");
+  static final Counter putWalletTrxnErrors = Metrics.counter("marketplace_client_errors_total",
+    "Requests to the Users and Wallets services that got no response", "service", "wallets", "operation", "put_wallet_trxn");
+  static final Counter putWalletTrxnRetries = Metrics.counter("marketplace_client_retries_total",
+    "Requests to the Users and Wallets services retried after a connect error or timeout", "service", "wallets", "operation", "put_wallet_trxn");
+
+  // Every transaction carries an Idempotency-Key, so an attempt that timed out (and may have been applied)
+  // can be repeated without the Wallets service applying it twice. Responses, including 5xx, are final:
+  // only connect errors and timeouts are retried, after a jittered exponential backoff, within retry-budget
   public Integer putWalletTrxn(Integer user_id, WalletTrxn walletTrxn) {
-    try {
-      // Convert walletTrxn to JSON
-      ObjectMapper objectMapper = new ObjectMapper();
-      String requestBody = objectMapper
-            .writerWithDefaultPrettyPrinter()
-            .writeValueAsString(walletTrxn);
-
-      HttpRequest request = HttpRequest.newBuilder()
-        .uri(URI.create(baseUrl + "/wallets/" + user_id))
-        .PUT(BodyPublishers.ofString(requestBody))
-        .header("Content-Type", "application/json")
-        .build();
-
-      HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-
-      return response.statusCode();
-    }
-    catch (Exception e) {
-      System.out.println("putWalletTrxn(" + user_id + ", " + walletTrxn +") failed: " + e);
-      return 400;
+    String idempotencyKey = UUID.randomUUID().toString();
+    long deadline = System.nanoTime() + retryBudget.toNanos();
+
+    for (int attempt = 1; ; attempt++) {
+      long remainingNanos = deadline - System.nanoTime();
+      Duration timeout = min(requestTimeout, Duration.ofNanos(remainingNanos));
+      long start = System.nanoTime();
+      try {
+        HttpResponse<String> response = httpClient.send(request(user_id, walletTrxn, idempotencyKey, timeout), BodyHandlers.ofString());
+        putWalletTrxnLatency.observeSince(start);
+        return response.statusCode();
+      }
+      catch (ConnectException | HttpTimeoutException e) {
+        putWalletTrxnLatency.observeSince(start);
+        putWalletTrxnErrors.increment();
+        log.warn("putWalletTrxn({}, {}) attempt {} failed: {}", user_id, walletTrxn, attempt, e.toString());
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return 400;
+      }
+      catch (Exception e) {
+        putWalletTrxnLatency.observeSince(start);
+        putWalletTrxnErrors.increment();
+        log.warn("putWalletTrxn({}, {}) failed: {}", user_id, walletTrxn, e.toString());
+        return 400;
+      }
+
+      // Full jitter: a random wait up to backoff * 2^(attempt - 1), so retries of many sagas don't arrive together
+      long backoffNanos = ThreadLocalRandom.current().nextLong(backoff.toNanos() << (attempt - 1) | 1);
+      // Give up if another attempt could not get a useful share of the budget
+      if (attempt >= maxAttempts || deadline - System.nanoTime() - backoffNanos < requestTimeout.toNanos() / 4)
+        return 400;
+      putWalletTrxnRetries.increment();
+      try {
+        Thread.sleep(Duration.ofNanos(backoffNanos).toMillis());
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return 400;
+      }
     }
   }
+
+  private HttpRequest request(Integer user_id, WalletTrxn walletTrxn, String idempotencyKey, Duration timeout) throws IOException {
+    // Convert walletTrxn to JSON
+    ObjectMapper objectMapper = new ObjectMapper();
+    String requestBody = objectMapper
+          .writerWithDefaultPrettyPrinter()
+          .writeValueAsString(walletTrxn);
+
+    return HttpRequest.newBuilder()
+      .uri(URI.create(baseUrl + "/wallets/" + user_id))
+      .PUT(BodyPublishers.ofString(requestBody))
+      .header("Content-Type", "application/json")
+      .header("Idempotency-Key", idempotencyKey)
+      .timeout(timeout)
+      .build();
+  }
+
+  private static Duration min(Duration a, Duration b) {
+    return a.compareTo(b) <= 0 ? a : b;
+  }
 }
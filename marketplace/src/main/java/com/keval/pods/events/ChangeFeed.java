@@ -0,0 +1,101 @@
+package com.keval.pods.events;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import akka.NotUsed;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.pubsub.Topic;
+import akka.japi.Pair;
+import akka.stream.BoundedSourceQueue;
+import akka.stream.javadsl.BroadcastHub;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.Metrics;
+
+// Subscribes this node to the change topics and fans the changes out to any number of stream consumers
+// (SSE clients) through a BroadcastHub per topic. Each consumer conflates what it can't keep up with,
+// per product or per order, so a slow client costs at most one pending change per key and never slows the hub
+public class ChangeFeed {
+
+    // Changes dropped because the hub's input buffer was full
+    private static final Counter droppedChanges = Metrics.counter("marketplace_change_feed_dropped_total", "Changes dropped before reaching the change feed hubs");
+
+    private final ActorSystem<?> system;
+    private final Source<StockChanged, NotUsed> stockHub;
+    private final Source<OrderStatusChanged, NotUsed> orderStatusHub;
+
+    // Settings from marketplace-app.change-feed
+    public ChangeFeed(ActorSystem<?> system) {
+        this.system = system;
+        int bufferSize = system.settings().config().getInt("marketplace-app.change-feed.buffer-size");
+        this.stockHub = subscribe(system, ChangeTopics.stock(system), StockChanged.class, "stockChangeFeed", bufferSize);
+        this.orderStatusHub = subscribe(system, ChangeTopics.orderStatus(system), OrderStatusChanged.class, "orderStatusChangeFeed", bufferSize);
+    }
+
+    private static <T> Source<T, NotUsed> subscribe(ActorSystem<?> system, ActorRef<Topic.Command<T>> topic, Class<T> eventClass,
+                                                    String name, int bufferSize) {
+        Pair<BoundedSourceQueue<T>, Source<T, NotUsed>> queueAndHub = Source.<T>queue(bufferSize)
+                .toMat(BroadcastHub.of(eventClass, bufferSize), Keep.both())
+                .run(system);
+        BoundedSourceQueue<T> queue = queueAndHub.first();
+        Source<T, NotUsed> hub = queueAndHub.second();
+
+        // Keep the hub draining while no client is connected, so new clients don't start with stale changes
+        hub.runWith(Sink.ignore(), system);
+
+        // Offering never blocks the subscriber; a full buffer means every consumer is conflating already
+        Behavior<T> subscriber = Behaviors.receive(eventClass)
+                .onMessage(eventClass, event -> {
+                    if (!queue.offer(event).isEnqueued())
+                        droppedChanges.increment();
+                    return Behaviors.same();
+                })
+                .build();
+        ActorRef<T> subscriberRef = system.systemActorOf(subscriber, name, Props.empty());
+        topic.tell(Topic.subscribe(subscriberRef));
+        return hub;
+    }
+
+    // All stock changes from now on, at most one pending change per product for a slow consumer
+    public Source<StockChanged, NotUsed> stockChanges() {
+        return stockHub
+                .conflateWithSeed(ChangeFeed::latestByProduct, (latest, change) -> {
+                    latest.put(change.product_id(), change);
+                    return latest;
+                })
+                .mapConcat(Map::values);
+    }
+
+    // Status changes of one order from now on, only the latest if the consumer is slow; completes after a final status
+    public Source<OrderStatusChanged, NotUsed> orderStatusChanges(Integer orderId) {
+        return orderStatusHub
+                .filter(change -> orderId.equals(change.order_id()))
+                .conflate((older, newer) -> newer)
+                .takeWhile(change -> !change.isFinal(), true);
+    }
+
+    // Status changes of one order, subscribed to already, for a consumer that reads the order's current status next:
+    // a change made between the read and a later subscription would be lost. Changes arriving before the returned
+    // Source is run are conflated to the latest; cancel() it if it won't be run
+    public Source<OrderStatusChanged, NotUsed> subscribeToOrderStatus(Integer orderId) {
+        return orderStatusChanges(orderId).preMaterialize(system).second();
+    }
+
+    public void cancel(Source<?, NotUsed> subscription) {
+        subscription.runWith(Sink.cancelled(), system);
+    }
+
+    private static Map<Integer, StockChanged> latestByProduct(StockChanged change) {
+        Map<Integer, StockChanged> latest = new LinkedHashMap<>();
+        latest.put(change.product_id(), change);
+        return latest;
+    }
+}
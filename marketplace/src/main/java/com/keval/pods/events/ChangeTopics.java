@@ -0,0 +1,21 @@
+package com.keval.pods.events;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.pubsub.PubSub;
+import akka.actor.typed.pubsub.Topic;
+
+// Cluster-wide topics of stock and order status changes
+// Entities publish to their node's topic actor, which forwards only to nodes that have subscribers (the ChangeFeed)
+public final class ChangeTopics {
+
+    private ChangeTopics() {}
+
+    public static ActorRef<Topic.Command<StockChanged>> stock(ActorSystem<?> system) {
+        return PubSub.get(system).topic(StockChanged.class, "product-stock");
+    }
+
+    public static ActorRef<Topic.Command<OrderStatusChanged>> orderStatus(ActorSystem<?> system) {
+        return PubSub.get(system).topic(OrderStatusChanged.class, "order-status");
+    }
+}
@@ -0,0 +1,18 @@
+package com.keval.pods.events;
+
+import com.keval.pods.CborSerializable;
+import com.keval.pods.order.Order;
+
+// Published by an OrderActor when its order is placed, delivered or cancelled
+public record OrderStatusChanged(Integer order_id, String status) implements CborSerializable {
+
+    // Delivered and cancelled orders don't change any more
+    public boolean isFinal() {
+        return Order.STATUS_DELIVERED.equals(status) || Order.STATUS_CANCELLED.equals(status);
+    }
+
+    // An order only moves from placed to a final status, so a change is newer exactly when it is final and the other isn't
+    public boolean isNewerThan(OrderStatusChanged other) {
+        return isFinal() && !other.isFinal();
+    }
+}
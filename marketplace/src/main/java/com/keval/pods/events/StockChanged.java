@@ -0,0 +1,6 @@
+package com.keval.pods.events;
+
+import com.keval.pods.CborSerializable;
+
+// Published by a ProductActor whenever its stock changes
+public record StockChanged(Integer product_id, Integer stock_quantity) implements CborSerializable {}
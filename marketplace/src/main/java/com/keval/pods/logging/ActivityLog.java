@@ -0,0 +1,78 @@
+package com.keval.pods.logging;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.actor.typed.ActorSystem;
+
+// Logging for hot paths: every event is counted in its category, only a sample is logged at DEBUG,
+// and one INFO line per interval summarizes the counts, e.g. "Activity in last 1s: 1200 stock decrements, 800 product reads"
+public final class ActivityLog {
+
+    private ActivityLog() {}
+
+    private static final Logger log = LoggerFactory.getLogger(ActivityLog.class);
+
+    private static final Config config = ConfigFactory.load().getConfig("marketplace-app.logging");
+    private static final double defaultSampleRate = config.getDouble("sample-rate");
+    private static final Config categorySampleRates = config.getConfig("category-sample-rates");
+
+    private static final Map<String, Category> categories = new ConcurrentHashMap<>();
+
+    public static final class Category {
+
+        private final String description;
+        private final double sampleRate;
+        private final LongAdder count = new LongAdder();
+
+        private Category(String description, double sampleRate) {
+            this.description = description;
+            this.sampleRate = sampleRate;
+        }
+
+        public void count() {
+            count.increment();
+        }
+
+        // True for the sampled share of events, and only when the logger has DEBUG enabled
+        public boolean sampled(Logger logger) {
+            if (sampleRate <= 0 || !logger.isDebugEnabled())
+                return false;
+            return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        }
+    }
+
+    // Sample rate from marketplace-app.logging.category-sample-rates.<name>, or the default sample-rate
+    public static Category category(String name, String description) {
+        return categories.computeIfAbsent(name, n -> new Category(description,
+                categorySampleRates.hasPath(n) ? categorySampleRates.getDouble(n) : defaultSampleRate));
+    }
+
+    // Logs the summary line every marketplace-app.logging.summary-interval on the system's scheduler
+    public static void scheduleSummaries(ActorSystem<?> system) {
+        Duration interval = config.getDuration("summary-interval");
+        system.scheduler().scheduleAtFixedRate(interval, interval, () -> logSummary(interval), system.executionContext());
+    }
+
+    private static void logSummary(Duration interval) {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Category> entry : new TreeMap<>(categories).entrySet()) {
+            long count = entry.getValue().count.sumThenReset();
+            if (count == 0)
+                continue;
+            summary.append(summary.length() == 0 ? "" : ", ").append(count).append(' ').append(entry.getValue().description);
+        }
+        if (summary.length() > 0)
+            log.info("Activity in last {}s: {}", interval.toSeconds(), summary);
+    }
+}
@@ -0,0 +1,23 @@
+package com.keval.pods.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Monotonic count, striped so concurrent actors don't contend on one cache line
+public class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    Counter() {}
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long n) {
+        count.add(n);
+    }
+
+    public long value() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,23 @@
+package com.keval.pods.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Value that goes up and down, e.g. messages sitting in mailboxes
+public class Gauge {
+
+    private final LongAdder value = new LongAdder();
+
+    Gauge() {}
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void decrement() {
+        value.decrement();
+    }
+
+    public long value() {
+        return value.sum();
+    }
+}
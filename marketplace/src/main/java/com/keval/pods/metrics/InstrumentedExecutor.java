@@ -0,0 +1,104 @@
+package com.keval.pods.metrics;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.typesafe.config.Config;
+
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceConfigurator;
+import akka.dispatch.ExecutorServiceFactory;
+import akka.dispatch.ForkJoinExecutorConfigurator;
+import akka.dispatch.ThreadPoolExecutorConfigurator;
+
+// Executor of a dispatcher that reports, per dispatcher, how long tasks (mostly mailbox runs) wait for a thread and
+// how long they run. Only one task in `sample-every` is timed, the others go to the pool untouched, so the histograms
+// count 1/sample-every of the tasks and rate(marketplace_dispatcher_task_seconds_sum) * sample-every over the pool size
+// is the dispatcher's utilisation. Selected in a dispatcher block with
+//   executor = "com.keval.pods.metrics.InstrumentedExecutor"
+//   instrumented-executor { delegate = "fork-join-executor", sample-every = 16 }   (or "thread-pool-executor")
+// and the delegate's own block (e.g. fork-join-executor { parallelism-max = 16 }) sizing the pool as usual
+public class InstrumentedExecutor extends ExecutorServiceConfigurator {
+
+    private final ExecutorServiceConfigurator delegate;
+    private final int sampleEvery;
+
+    public InstrumentedExecutor(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+        this.sampleEvery = Math.max(1, config.getInt("instrumented-executor.sample-every"));
+        String delegateExecutor = config.getString("instrumented-executor.delegate");
+        this.delegate = switch (delegateExecutor) {
+            case "fork-join-executor" -> new ForkJoinExecutorConfigurator(config.getConfig(delegateExecutor), prerequisites);
+            case "thread-pool-executor" -> new ThreadPoolExecutorConfigurator(config.getConfig(delegateExecutor), prerequisites);
+            default -> throw new IllegalArgumentException("Unsupported instrumented-executor.delegate " + delegateExecutor);
+        };
+    }
+
+    @Override
+    public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+        ExecutorServiceFactory factory = delegate.createExecutorServiceFactory(id, threadFactory);
+        return () -> new InstrumentedExecutorService(factory.createExecutorService(), id, sampleEvery);
+    }
+
+    static final class InstrumentedExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final int sampleEvery;
+        private final LatencyHistogram queueWait;
+        private final LatencyHistogram taskTime;
+
+        InstrumentedExecutorService(ExecutorService delegate, String dispatcher, int sampleEvery) {
+            this.delegate = delegate;
+            this.sampleEvery = sampleEvery;
+            this.queueWait = Metrics.histogram("marketplace_dispatcher_queue_wait_seconds", "Time sampled tasks waited for a thread of the dispatcher", "dispatcher", dispatcher);
+            this.taskTime = Metrics.histogram("marketplace_dispatcher_task_seconds", "Time sampled tasks ran on a thread of the dispatcher", "dispatcher", dispatcher);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+                delegate.execute(task);
+                return;
+            }
+            long submittedNanos = System.nanoTime();
+            delegate.execute(() -> {
+                long startNanos = System.nanoTime();
+                queueWait.observeNanos(startNanos - submittedNanos);
+                try {
+                    task.run();
+                } finally {
+                    taskTime.observeSince(startNanos);
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
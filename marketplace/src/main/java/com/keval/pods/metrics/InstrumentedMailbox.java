@@ -0,0 +1,80 @@
+package com.keval.pods.metrics;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.typesafe.config.Config;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import scala.Option;
+
+// Unbounded mailbox that counts messages enqueued and tracks messages waiting, summed over all actors of a kind
+// Selected per actor through a config block such as
+//   product-actor { mailbox-type = "com.keval.pods.metrics.InstrumentedMailbox", actor = "ProductActor" }
+public class InstrumentedMailbox implements MailboxType, ProducesMessageQueue<InstrumentedMailbox.InstrumentedMessageQueue> {
+
+    private final Counter enqueued;
+    private final Gauge depth;
+
+    public InstrumentedMailbox(ActorSystem.Settings settings, Config config) {
+        String actor = config.getString("actor");
+        this.enqueued = Metrics.counter("marketplace_mailbox_enqueued_total",
+                "Messages delivered to the mailboxes of actors of a kind", "actor", actor);
+        this.depth = Metrics.gauge("marketplace_mailbox_depth",
+                "Messages waiting in the mailboxes of actors of a kind", "actor", actor);
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        return new InstrumentedMessageQueue(enqueued, depth);
+    }
+
+    public static class InstrumentedMessageQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+
+        private final ConcurrentLinkedQueue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        private final Counter enqueued;
+        private final Gauge depth;
+
+        InstrumentedMessageQueue(Counter enqueued, Gauge depth) {
+            this.enqueued = enqueued;
+            this.depth = depth;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            queue.offer(handle);
+            enqueued.increment();
+            depth.increment();
+        }
+
+        @Override
+        public Envelope dequeue() {
+            Envelope envelope = queue.poll();
+            if (envelope != null)
+                depth.decrement();
+            return envelope;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return queue.size();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            Envelope envelope;
+            while ((envelope = dequeue()) != null)
+                deadLetters.enqueue(owner, envelope);
+        }
+    }
+}
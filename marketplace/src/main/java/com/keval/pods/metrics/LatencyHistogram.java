@@ -0,0 +1,50 @@
+package com.keval.pods.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency distribution over fixed buckets from 100us to 10s, recorded without allocating
+public class LatencyHistogram {
+
+    // Upper bounds of the buckets, in nanoseconds; anything larger falls in the +Inf bucket
+    static final long[] BOUNDS_NANOS = {
+            100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    // Per-bucket (not cumulative) counts, the last one being +Inf
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void observeNanos(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket])
+            bucket++;
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    // Records the time elapsed since startNanos, a System.nanoTime() reading
+    public void observeSince(long startNanos) {
+        observeNanos(System.nanoTime() - startNanos);
+    }
+
+    long bucketCount(int bucket) {
+        return buckets[bucket].sum();
+    }
+
+    int bucketCount() {
+        return buckets.length;
+    }
+
+    long sumNanos() {
+        return sumNanos.sum();
+    }
+}
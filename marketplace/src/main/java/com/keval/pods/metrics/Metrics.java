@@ -0,0 +1,100 @@
+package com.keval.pods.metrics;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Process-wide registry of counters, gauges and latency histograms, rendered in the Prometheus text format
+// Look a metric up once (e.g. into a static field) and update the returned handle on the hot path:
+// updates are LongAdder operations and never allocate
+public final class Metrics {
+
+    private Metrics() {}
+
+    private record Family(String name, String help, String type, Map<String, Object> series) {}
+
+    private static final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    // Histogram bucket bounds as "le" label values, in seconds
+    private static final String[] BUCKET_LABELS = new String[LatencyHistogram.BOUNDS_NANOS.length + 1];
+    static {
+        for (int i = 0; i < LatencyHistogram.BOUNDS_NANOS.length; i++)
+            BUCKET_LABELS[i] = BigDecimal.valueOf(LatencyHistogram.BOUNDS_NANOS[i], 9).stripTrailingZeros().toPlainString();
+        BUCKET_LABELS[LatencyHistogram.BOUNDS_NANOS.length] = "+Inf";
+    }
+
+    // Labels are given as name/value pairs, e.g. counter("x_total", "...", "command", "GetProduct")
+    public static Counter counter(String name, String help, String... labels) {
+        return register(name, help, "counter", labels, Counter::new);
+    }
+
+    public static Gauge gauge(String name, String help, String... labels) {
+        return register(name, help, "gauge", labels, Gauge::new);
+    }
+
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        return register(name, help, "histogram", labels, LatencyHistogram::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T register(String name, String help, String type, String[] labels, Supplier<T> create) {
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type, new ConcurrentHashMap<>()));
+        if (!family.type.equals(type))
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        return (T) family.series.computeIfAbsent(labelString(labels), l -> create.get());
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            builder.append(i == 0 ? "" : ",").append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return builder.toString();
+    }
+
+    // Text exposition of every registered metric, families and series in name order
+    public static String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : new TreeMap<>(families).values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+
+            for (Map.Entry<String, Object> series : new TreeMap<>(family.series).entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+
+                if (metric instanceof Counter counter)
+                    sample(out, family.name, labels, Long.toString(counter.value()));
+                else if (metric instanceof Gauge gauge)
+                    sample(out, family.name, labels, Long.toString(gauge.value()));
+                else if (metric instanceof LatencyHistogram histogram)
+                    histogram(out, family.name, labels, histogram);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void histogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String separator = labels.isEmpty() ? "" : ",";
+        long cumulative = 0;
+        for (int i = 0; i < histogram.bucketCount(); i++) {
+            cumulative += histogram.bucketCount(i);
+            sample(out, name + "_bucket", labels + separator + "le=\"" + BUCKET_LABELS[i] + "\"", Long.toString(cumulative));
+        }
+        sample(out, name + "_sum", labels, Double.toString(histogram.sumNanos() / 1e9));
+        sample(out, name + "_count", labels, Long.toString(cumulative));
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String value) {
+        out.append(name);
+        if (!labels.isEmpty())
+            out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,79 @@
+package com.keval.pods.order;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Resident form of an order inside its OrderActor, kept for the lifetime of the node:
+// primitive fields, an int-coded status and parallel product/quantity arrays instead of boxed fields,
+// a status string and a list of item objects. Converted to an Order only when it leaves the actor
+public final class CompactOrder {
+
+    public static final int STATUS_PLACED = 1;
+    public static final int STATUS_DELIVERED = 2;
+    public static final int STATUS_CANCELLED = 3;
+
+    // Indexed by status code
+    private static final String[] STATUS_NAMES = {null, Order.STATUS_PLACED, Order.STATUS_DELIVERED, Order.STATUS_CANCELLED};
+
+    private static final int[] NO_ITEMS = new int[0];
+
+    public final int order_id;
+    public final int user_id;
+    public final int total_price;
+    public int status;
+    public final int[] product_ids;
+    public final int[] quantities;
+
+    public CompactOrder(int order_id, int user_id, int total_price, int status, int[] product_ids, int[] quantities) {
+        this.order_id = order_id;
+        this.user_id = user_id;
+        this.total_price = total_price;
+        this.status = status;
+        this.product_ids = product_ids;
+        this.quantities = quantities;
+    }
+
+    // From an order placed by the saga, which has every field set
+    public static CompactOrder of(Order order) {
+        int itemCount = order.items == null ? 0 : order.items.size();
+        int[] product_ids = itemCount == 0 ? NO_ITEMS : new int[itemCount];
+        int[] quantities = itemCount == 0 ? NO_ITEMS : new int[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            Order.OrderItem item = order.items.get(i);
+            product_ids[i] = item.product_id;
+            quantities[i] = item.quantity;
+        }
+        return new CompactOrder(order.order_id, order.user_id, order.total_price, statusCode(order.status), product_ids, quantities);
+    }
+
+    public Order toOrder() {
+        Order order = new Order();
+        order.order_id = order_id;
+        order.user_id = user_id;
+        order.total_price = total_price;
+        order.status = statusName(status);
+        order.items = new ArrayList<>(product_ids.length);
+        for (int i = 0; i < product_ids.length; i++) {
+            Order.OrderItem item = new Order.OrderItem();
+            item.product_id = product_ids[i];
+            item.quantity = quantities[i];
+            order.items.add(item);
+        }
+        return order;
+    }
+
+    public String statusName() {
+        return statusName(status);
+    }
+
+    public static String statusName(int status) {
+        return STATUS_NAMES[status];
+    }
+
+    public static int statusCode(String status) {
+        for (int code = 1; code < STATUS_NAMES.length; code++)
+            if (STATUS_NAMES[code].equals(status))
+                return code;
+        throw new IllegalArgumentException("Unknown order status " + status);
+    }
+}
@@ -1,15 +1,20 @@
 package com.keval.pods.order;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.keval.pods.CborSerializable;
-import com.keval.pods.Routes;
 import com.keval.pods.client.WalletsClient;
 import com.keval.pods.client.model.WalletTrxn;
+import com.keval.pods.metrics.LatencyHistogram;
+import com.keval.pods.metrics.Metrics;
+import com.keval.pods.pool.WorkerLoad;
 import com.keval.pods.product.ProductActor;
 
 import akka.actor.typed.ActorRef;
@@ -18,33 +23,71 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
 import akka.cluster.sharding.typed.javadsl.ClusterSharding;
 import akka.cluster.sharding.typed.javadsl.EntityRef;
 
 public class DeleteOrderActor extends AbstractBehavior<DeleteOrderActor.Command> {
-    private final static Logger log = LoggerFactory.getLogger(Routes.class);
+    private final static Logger log = LoggerFactory.getLogger(DeleteOrderActor.class);
 
     public interface Command extends CborSerializable {}
     public static final record DeleteOrderRequest(Integer orderId, ActorRef<Boolean> replyTo) implements Command {}
     public static final record CancelOrderResponse(Integer orderId, Boolean successful) implements Command {}
     public static final record GetOrderResponse(Order order) implements Command {}
+    private static final record ReleaseStuckSagas() implements Command {}
+
+    // Latency of each cancellation stage, and of whole cancellations by outcome
+    private static final LatencyHistogram cancelStage = stageHistogram("cancel");
+    private static final LatencyHistogram getOrderStage = stageHistogram("get_order");
+    private static final LatencyHistogram refundStage = stageHistogram("refund");
+    private static final LatencyHistogram cancelledSagas =
+            Metrics.histogram("marketplace_delete_order_saga_seconds", "Order cancellation saga latency by outcome", "outcome", "cancelled");
+    private static final LatencyHistogram rejectedSagas =
+            Metrics.histogram("marketplace_delete_order_saga_seconds", "Order cancellation saga latency by outcome", "outcome", "rejected");
+
+    private static LatencyHistogram stageHistogram(String stage) {
+        return Metrics.histogram("marketplace_delete_order_stage_seconds", "Order cancellation saga stage latency", "stage", stage);
+    }
 
     // ClusterSharding instance
     private final ClusterSharding sharding;
 
     // Actors to reply to after order cancellation mapped by order_id
     private final Map<Integer, ActorRef<Boolean>> replyMap = new HashMap<>();
+    // Start times (System.nanoTime) of each cancellation and of its current stage mapped by order_id
+    private final Map<Integer, Long> sagaStartNanos = new HashMap<>();
+    private final Map<Integer, Long> stageStartNanos = new HashMap<>();
 
     // Utility client for communicating with the Wallets service
-    private WalletsClient walletsClient = new WalletsClient();
+    private final WalletsClient walletsClient;
+    // Requests in flight for the WorkerPool routing to this worker
+    private final WorkerLoad load;
+    // Cancellations running longer than this are dropped, see onReleaseStuckSagas
+    private final long sagaTimeoutNanos;
 
     public static Behavior<Command> create() {
-        return Behaviors.setup(context -> new DeleteOrderActor(context));
+        return create(new WalletsClient());
+    }
+
+    // Actor initialized with the given Wallets service client (e.g. a stub for benchmarks)
+    public static Behavior<Command> create(WalletsClient walletsClient) {
+        return create(walletsClient, new WorkerLoad());
+    }
+
+    // Actor reporting the end of each cancellation to the WorkerPool that owns it
+    public static Behavior<Command> create(WalletsClient walletsClient, WorkerLoad load) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new DeleteOrderActor(context, timers, walletsClient, load)));
     }
 
-    private DeleteOrderActor(ActorContext<Command> context) {
+    private DeleteOrderActor(ActorContext<Command> context, TimerScheduler<Command> timers, WalletsClient walletsClient, WorkerLoad load) {
         super(context);
         this.sharding = ClusterSharding.get(getContext().getSystem());
+        this.walletsClient = walletsClient;
+        this.load = load;
+
+        Duration sagaTimeout = context.getSystem().settings().config().getDuration("marketplace-app.worker-pools.saga-timeout");
+        this.sagaTimeoutNanos = sagaTimeout.toNanos();
+        timers.startTimerWithFixedDelay(new ReleaseStuckSagas(), sagaTimeout);
     }
 
     @Override
@@ -53,29 +96,53 @@ public class DeleteOrderActor extends AbstractBehavior<DeleteOrderActor.Command>
                 .onMessage(DeleteOrderRequest.class, this::onDeleteOrderRequest)
                 .onMessage(CancelOrderResponse.class, this::onCancelOrderResponse)
                 .onMessage(GetOrderResponse.class, this::onGetOrderResponse)
+                .onMessage(ReleaseStuckSagas.class, this::onReleaseStuckSagas)
                 .build();
     }
 
     // Helper method to clear state related to any order from the worker
     private void clearOrderState(Integer order_id) {
         this.replyMap.remove(order_id);
+        this.sagaStartNanos.remove(order_id);
+        this.stageStartNanos.remove(order_id);
         // this.ordersProductQuantitiesToIncrease.remove(order_id);
     }
 
+    // Records the latency of the stage that just finished for the order and starts timing the next one
+    private void endStage(Integer order_id, LatencyHistogram stage) {
+        long now = System.nanoTime();
+        Long stageStart = this.stageStartNanos.put(order_id, now);
+        if (stageStart != null)
+            stage.observeNanos(now - stageStart);
+    }
+
+    private void endSaga(Integer order_id, LatencyHistogram outcome) {
+        Long sagaStart = this.sagaStartNanos.get(order_id);
+        if (sagaStart != null) {
+            long sagaNanos = System.nanoTime() - sagaStart;
+            outcome.observeNanos(sagaNanos);
+            load.finished(sagaNanos);
+        }
+    }
+
     private Behavior<Command> onDeleteOrderRequest(DeleteOrderRequest message) {
-        log.info("{} received orderId {}", getContext().getSelf().path().name(), message.orderId);
+        log.debug("{} received orderId {}", getContext().getSelf().path().name(), message.orderId);
 
         // If there is already a pending cancel request for the order_id, fail
         // NOTE: This does not prevent multiple cancel requests for the same order_id received by
         // different CancelOrder actors but it still simplifies the internal logic of one DeleteOrderActor
         if (this.replyMap.containsKey(message.orderId)) {
-            log.info("{} info on orderId {}: Failed due to pending cancel request", getContext().getSelf().path().name(), message.orderId);
+            log.debug("{} info on orderId {}: Failed due to pending cancel request", getContext().getSelf().path().name(), message.orderId);
+            load.finished(0);
             message.replyTo.tell(false);
             return Behaviors.same();
         }
 
         // Otherwise, intialize state
         this.replyMap.put(message.orderId, message.replyTo);
+        long now = System.nanoTime();
+        this.sagaStartNanos.put(message.orderId, now);
+        this.stageStartNanos.put(message.orderId, now);
 
         // Send cancellation message to OrderActor
         EntityRef<OrderActor.Command> orderActor = sharding.entityRefFor(OrderActor.ENTITY_TYPE_KEY, OrderActor.IdPrefix + message.orderId);
@@ -85,14 +152,22 @@ public class DeleteOrderActor extends AbstractBehavior<DeleteOrderActor.Command>
     } 
 
     private Behavior<Command> onCancelOrderResponse(CancelOrderResponse message) {
-        ActorRef<Boolean> replyTo = this.replyMap.get(message.orderId);
-
-        // If order cancellation failed, send fail resposne
-        if (!message.successful) {
-            log.info("{} info on order {}: CancelOrder failed", getContext().getSelf().path().name(), message.orderId); 
-            replyTo.tell(false);
-            clearOrderState(message.orderId);
-            return Behaviors.same();
+        // A cancellation released by onReleaseStuckSagas has no state left; only a successful one still has work to do
+        if (!this.replyMap.containsKey(message.orderId)) {
+            log.debug("{} info on order {}: late CancelOrder response, successful {}", getContext().getSelf().path().name(), message.orderId, message.successful);
+            if (!message.successful)
+                return Behaviors.same();
+        } else {
+            endStage(message.orderId, cancelStage);
+
+            // If order cancellation failed, send fail resposne
+            if (!message.successful) {
+                log.debug("{} info on order {}: CancelOrder failed", getContext().getSelf().path().name(), message.orderId); 
+                endSaga(message.orderId, rejectedSagas);
+                this.replyMap.get(message.orderId).tell(false);
+                clearOrderState(message.orderId);
+                return Behaviors.same();
+            }
         }
         
         // Otherwise, obtain userId of from the order actor
@@ -104,7 +179,8 @@ public class DeleteOrderActor extends AbstractBehavior<DeleteOrderActor.Command>
 
     private Behavior<Command> onGetOrderResponse(GetOrderResponse message) {
         Order order = message.order;
-        log.info("{} info on order {}: cancelled order {}", getContext().getSelf().path().name(), order.order_id, order);
+        log.debug("{} info on order {}: cancelled order {}", getContext().getSelf().path().name(), order.order_id, order);
+        endStage(order.order_id, getOrderStage);
 
         // Restock all products in the order
         for (Order.OrderItem item : order.items) {
@@ -117,13 +193,37 @@ public class DeleteOrderActor extends AbstractBehavior<DeleteOrderActor.Command>
         if (refundStatus != 200) {
             log.warn("{} warning on order {}: failed to credit wallet {} for amount {}", getContext().getSelf().path().name(), order.order_id, order.user_id, order.total_price);
         } else {
-            log.info("{} info on order {}: credited wallet {} for amount {}", getContext().getSelf().path().name(), order.order_id, order.user_id, order.total_price);
+            log.debug("{} info on order {}: credited wallet {} for amount {}", getContext().getSelf().path().name(), order.order_id, order.user_id, order.total_price);
         }
 
+        endStage(order.order_id, refundStage);
+        endSaga(order.order_id, cancelledSagas);
+
+        // Null for a cancellation released by onReleaseStuckSagas, whose request is gone but which still refunds
         ActorRef<Boolean> replyTo = this.replyMap.get(order.order_id);
-        replyTo.tell(true);
+        if (replyTo != null)
+            replyTo.tell(true);
         
         clearOrderState(order.order_id);
         return Behaviors.same();
     }
+
+    // Cancellations still waiting for their OrderActor after saga-timeout (e.g. a reply lost with a node): their requests
+    // timed out long ago, so they stop counting as in flight for the WorkerPool and no longer block a new cancel of the
+    // order. A reply that turns up later still finishes the cancellation, refund included, just without anyone to answer
+    private Behavior<Command> onReleaseStuckSagas(ReleaseStuckSagas command) {
+        long now = System.nanoTime();
+        List<Integer> stuck = new ArrayList<>();
+        for (Map.Entry<Integer, Long> saga : this.sagaStartNanos.entrySet())
+            if (now - saga.getValue() > sagaTimeoutNanos)
+                stuck.add(saga.getKey());
+
+        for (Integer order_id : stuck) {
+            log.warn("{} warning on order {}: no reply from its OrderActor after {}ms, releasing the cancellation",
+                    getContext().getSelf().path().name(), order_id, (now - this.sagaStartNanos.get(order_id)) / 1_000_000);
+            endSaga(order_id, rejectedSagas);
+            clearOrderState(order_id);
+        }
+        return Behaviors.same();
+    }
 }
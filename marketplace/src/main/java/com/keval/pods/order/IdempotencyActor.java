@@ -0,0 +1,158 @@
+package com.keval.pods.order;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.keval.pods.CborSerializable;
+import com.keval.pods.Gateway;
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.Metrics;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+
+// One entity per Idempotency-Key (scoped to the user) of POST /orders
+// The first request for a key places the order through the Gateway; requests arriving while that saga runs
+// wait for its result, and requests after it get the same Order back until the entry expires after `ttl`
+// Only placed orders are stored: after a failed or timed-out saga the key can be retried
+public class IdempotencyActor extends AbstractBehavior<IdempotencyActor.Command> {
+    private final static Logger log = LoggerFactory.getLogger(IdempotencyActor.class);
+
+    public interface Command extends CborSerializable {}
+    public static final record ClaimOrder(Order order, ActorRef<Order> replyTo, ActorRef<Gateway.Command> gateway) implements Command {}
+    // The reply to the claim numbered `generation`, a null order if its saga did not reply within inFlightTimeout
+    private static final record OrderPlaced(int generation, Order order) implements Command {}
+    private static final record Expire() implements Command {}
+
+    public static final EntityTypeKey<IdempotencyActor.Command> ENTITY_TYPE_KEY =
+            EntityTypeKey.create(IdempotencyActor.Command.class, "IdempotencyActor");
+
+    // All idempotencyActors will have a name of the form "IdempotencyActor{userId}:{idempotencyKey}"
+    public static final String IdPrefix = "IdempotencyActor";
+
+    public static String entityId(Integer userId, String idempotencyKey) {
+        return IdPrefix + userId + ":" + idempotencyKey;
+    }
+
+    // Requests by how they were answered: a new saga, joined an in-flight one, or replayed a stored Order
+    private static final Counter newRequests = requestCounter("new");
+    private static final Counter joinedRequests = requestCounter("in_flight");
+    private static final Counter replayedRequests = requestCounter("replayed");
+
+    private static Counter requestCounter(String result) {
+        return Metrics.counter("marketplace_idempotency_requests_total", "POST /orders requests with an Idempotency-Key", "result", result);
+    }
+
+    private enum State { EMPTY, IN_FLIGHT, COMPLETED }
+
+    private final ActorRef<ClusterSharding.ShardCommand> shard;
+    private final TimerScheduler<Command> timers;
+    private final Duration ttl;
+    private final Duration inFlightTimeout;
+
+    private State state = State.EMPTY;
+    // Numbers each claim, so a reply from the saga of an earlier claim can't complete a later one
+    private int generation;
+    private final List<ActorRef<Order>> waiters = new ArrayList<>();
+    private Order result;
+
+    public static Behavior<Command> create(ActorRef<ClusterSharding.ShardCommand> shard) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new IdempotencyActor(context, timers, shard)));
+    }
+
+    private IdempotencyActor(ActorContext<Command> context, TimerScheduler<Command> timers, ActorRef<ClusterSharding.ShardCommand> shard) {
+        super(context);
+        this.timers = timers;
+        this.shard = shard;
+        this.ttl = context.getSystem().settings().config().getDuration("marketplace-app.idempotency.ttl");
+        this.inFlightTimeout = context.getSystem().settings().config().getDuration("marketplace-app.idempotency.in-flight-timeout");
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(ClaimOrder.class, this::onClaimOrder)
+                .onMessage(OrderPlaced.class, this::onOrderPlaced)
+                .onMessage(Expire.class, this::onExpire)
+                .build();
+    }
+
+    private Behavior<Command> onClaimOrder(ClaimOrder command) {
+        switch (state) {
+            case EMPTY -> {
+                newRequests.increment();
+                state = State.IN_FLIGHT;
+                waiters.add(command.replyTo);
+
+                int claim = ++generation;
+                // The key is claimed again, so the entry of an earlier failed saga no longer expires
+                timers.cancel(new Expire());
+
+                // The saga replies here instead of to the request, so every waiter gets its Order;
+                // a saga that never replies must not hold the key forever
+                getContext().ask(Order.class, command.gateway, inFlightTimeout,
+                        placed -> new Gateway.PlaceOrder(command.order, placed),
+                        (order, failure) -> new OrderPlaced(claim, failure == null ? order : null));
+            }
+            case IN_FLIGHT -> {
+                joinedRequests.increment();
+                waiters.add(command.replyTo);
+            }
+            case COMPLETED -> {
+                replayedRequests.increment();
+                command.replyTo.tell(result);
+            }
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<Command> onOrderPlaced(OrderPlaced command) {
+        if (command.generation != generation || state != State.IN_FLIGHT) {
+            log.debug("{} dropped the reply of an earlier claim", getContext().getSelf().path().name());
+            return Behaviors.same();
+        }
+
+        // A failed saga (an empty Order) is not stored, so a retry with the same key places the order afresh
+        if (command.order == null) {
+            log.warn("{} saga did not reply within {}, releasing the key", getContext().getSelf().path().name(), inFlightTimeout);
+            // Waiters get the failure reply now instead of their ask timing out
+            replyToWaiters(new Order());
+            state = State.EMPTY;
+        } else if (command.order.order_id == null) {
+            log.debug("{} saga failed, the key can be retried", getContext().getSelf().path().name());
+            replyToWaiters(command.order);
+            state = State.EMPTY;
+        } else {
+            log.debug("{} completed with order ID {}", getContext().getSelf().path().name(), command.order.order_id);
+            replyToWaiters(command.order);
+            state = State.COMPLETED;
+            result = command.order;
+        }
+
+        timers.startSingleTimer(new Expire(), ttl);
+        return Behaviors.same();
+    }
+
+    // Entry expired: free the entity, a later request for the key starts afresh
+    private Behavior<Command> onExpire(Expire command) {
+        shard.tell(new ClusterSharding.Passivate<>(getContext().getSelf()));
+        return Behaviors.same();
+    }
+
+    private void replyToWaiters(Order order) {
+        for (ActorRef<Order> waiter : waiters)
+            waiter.tell(order);
+        waiters.clear();
+    }
+}
@@ -1,6 +1,15 @@
 package com.keval.pods.order;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.keval.pods.CborSerializable;
+import com.keval.pods.archive.OrderArchive;
+import com.keval.pods.events.ChangeTopics;
+import com.keval.pods.events.OrderStatusChanged;
+import com.keval.pods.logging.ActivityLog;
+import com.keval.pods.trace.TraceContext;
+import com.keval.pods.trace.Tracing;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
@@ -8,16 +17,27 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.pubsub.Topic;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
 import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
 
+import java.time.Duration;
+
 public class OrderActor extends AbstractBehavior<OrderActor.Command> {
+    private final static Logger log = LoggerFactory.getLogger(OrderActor.class);
+
+    // Hot-path activity, counted for the periodic summary and logged only when sampled
+    private static final ActivityLog.Category ordersCreated = ActivityLog.category("orders-created", "orders created");
+    private static final ActivityLog.Category orderReads = ActivityLog.category("order-reads", "order reads");
+    private static final ActivityLog.Category orderUpdates = ActivityLog.category("order-updates", "order status updates");
 
     public interface Command extends CborSerializable {}
-    public static final record InitializeOrder(Order order) implements Command {}
+    public static final record InitializeOrder(Order order, TraceContext trace) implements Command {}
     public static final record GetOrder(ActorRef<Order> replyTo) implements Command {}
     public static final record UpdateOrderStatus(ActorRef<Boolean> replyTo, Order orderUpdate) implements Command {}
     public static final record CancelOrder(ActorRef<DeleteOrderActor.Command> replyTo) implements Command {}
     public static final record GetOrderDeleteOrder(ActorRef<DeleteOrderActor.Command> replyTo) implements Command {}
+    private static final record Idle() implements Command {}
 
     public static final EntityTypeKey<OrderActor.Command> ENTITY_TYPE_KEY =
             EntityTypeKey.create(OrderActor.Command.class, "OrderActor");
@@ -30,15 +50,39 @@ public class OrderActor extends AbstractBehavior<OrderActor.Command> {
         return name.substring(OrderActor.IdPrefix.length());
     }
 
-    // Initialize with null Order
-    private Order order = new Order();
+    // From the entity ID, so replies name the order even when it is unknown
+    private final int orderId;
+    // Null until the order is initialized
+    private CompactOrder order;
+
+    // Delivered and cancelled orders are moved to the node's archive and their actor passivated;
+    // a later message re-creates the actor from the archive, until it is idle for idleTimeout again
+    private final ActorRef<ClusterSharding.ShardCommand> shard;
+    private final OrderArchive archive;
+    // Whether the archive holds the order, so the actor can passivate without losing it
+    private boolean archived;
 
-    public static Behavior<Command> create() {
-        return Behaviors.setup(OrderActor::new);
+    // Status transitions, for GET /orders/{orderId}/events
+    private final ActorRef<Topic.Command<OrderStatusChanged>> statusTopic;
+
+    public static Behavior<Command> create(ActorRef<ClusterSharding.ShardCommand> shard, String entityId) {
+        return Behaviors.setup(context -> new OrderActor(context, shard, Integer.parseInt(extractProductId(entityId))));
     }
 
-    private OrderActor(ActorContext<Command> context) {
+    private OrderActor(ActorContext<Command> context, ActorRef<ClusterSharding.ShardCommand> shard, int orderId) {
         super(context);
+        this.orderId = orderId;
+        this.statusTopic = ChangeTopics.orderStatus(context.getSystem());
+        this.shard = shard;
+        this.archive = OrderArchive.get(context.getSystem());
+
+        // Either an archived order being read, or an actor about to be initialized (otherwise it's an unknown order)
+        if (archive.enabled()) {
+            this.order = archive.read(orderId);
+            this.archived = this.order != null;
+            Duration idleTimeout = context.getSystem().settings().config().getDuration("marketplace-app.order-archive.idle-timeout");
+            context.setReceiveTimeout(idleTimeout, new Idle());
+        }
     }
 
     @Override
@@ -49,26 +93,37 @@ public class OrderActor extends AbstractBehavior<OrderActor.Command> {
                 .onMessage(UpdateOrderStatus.class, this::onUpdateOrderStatus)
                 .onMessage(CancelOrder.class, this::onCancelOrder)
                 .onMessage(GetOrderDeleteOrder.class, this::onGetOrderDeleteOrder)
+                .onMessage(Idle.class, this::onIdle)
                 .build();
     }
 
     private Behavior<Command> onInitializeOrder(InitializeOrder command) {
-        System.out.println(getContext().getSelf().path().name() + " created");
-        this.order = command.order;
+        ordersCreated.count();
+        if (ordersCreated.sampled(log))
+            log.debug("{} created", getContext().getSelf().path().name());
+        Tracing.span(command.trace, getContext().getSelf().path().name(), "InitializeOrder");
+        this.order = CompactOrder.of(command.order);
+        // Placed orders stay live until they are delivered or cancelled
+        getContext().cancelReceiveTimeout();
+        publishStatus();
         return Behaviors.same();
     }
 
     private Behavior<Command> onGetOrder(GetOrder command) {
-        System.out.println(getContext().getSelf().path().name() + " received get order command");
-        command.replyTo.tell(this.order);
+        orderReads.count();
+        if (orderReads.sampled(log))
+            log.debug("{} received get order command", getContext().getSelf().path().name());
+        command.replyTo.tell(this.order != null ? this.order.toOrder() : new Order());
         return Behaviors.same();
     }
 
     private Behavior<Command> onUpdateOrderStatus(UpdateOrderStatus command) {
-        System.out.println(getContext().getSelf().path().name() + " received update order state command to status " + command.orderUpdate.status);
+        orderUpdates.count();
+        if (orderUpdates.sampled(log))
+            log.debug("{} received update order state command to status {}", getContext().getSelf().path().name(), command.orderUpdate.status);
         
         // If this a null OrderActor, fail request
-        if (this.order.order_id == null) {
+        if (this.order == null) {
             command.replyTo.tell(false);
             return Behaviors.same();
         }
@@ -78,13 +133,15 @@ public class OrderActor extends AbstractBehavior<OrderActor.Command> {
             command.replyTo.tell(false);
         
         // Only allow if current status is placed
-        else if (!this.order.status.equals(Order.STATUS_PLACED))
+        else if (this.order.status != CompactOrder.STATUS_PLACED)
             command.replyTo.tell(false);
         
         else {
-            this.order.status = Order.STATUS_DELIVERED;
-            System.out.println(getContext().getSelf().path().name() + " set status to " + Order.STATUS_DELIVERED);
+            this.order.status = CompactOrder.STATUS_DELIVERED;
+            log.debug("{} set status to {}", getContext().getSelf().path().name(), Order.STATUS_DELIVERED);
             command.replyTo.tell(true);
+            publishStatus();
+            archiveAndPassivate();
         }
 
         return Behaviors.same();
@@ -92,21 +149,46 @@ public class OrderActor extends AbstractBehavior<OrderActor.Command> {
 
     private Behavior<Command> onCancelOrder(CancelOrder command) {
         // If this is a valid order and current status is placed, cancel order and give success response
-        if (this.order.order_id != null && this.order.status.equals(Order.STATUS_PLACED)) {
-            this.order.status = Order.STATUS_CANCELLED;
-            command.replyTo.tell(new DeleteOrderActor.CancelOrderResponse(this.order.order_id, true));
+        if (this.order != null && this.order.status == CompactOrder.STATUS_PLACED) {
+            this.order.status = CompactOrder.STATUS_CANCELLED;
+            command.replyTo.tell(new DeleteOrderActor.CancelOrderResponse(orderId, true));
+            publishStatus();
+            archiveAndPassivate();
         }
         else
         {
-            command.replyTo.tell(new DeleteOrderActor.CancelOrderResponse(this.order.order_id, false));
+            command.replyTo.tell(new DeleteOrderActor.CancelOrderResponse(orderId, false));
         }
 
         return Behaviors.same();
     }
 
     private Behavior<Command> onGetOrderDeleteOrder(GetOrderDeleteOrder command) {
-        System.out.println(getContext().getSelf().path().name() + " received get order command");
-        command.replyTo.tell(new DeleteOrderActor.GetOrderResponse(this.order));
+        orderReads.count();
+        if (orderReads.sampled(log))
+            log.debug("{} received get order command for cancellation", getContext().getSelf().path().name());
+        command.replyTo.tell(new DeleteOrderActor.GetOrderResponse(this.order != null ? this.order.toOrder() : new Order()));
+        return Behaviors.same();
+    }
+
+    private void publishStatus() {
+        statusTopic.tell(Topic.publish(new OrderStatusChanged(this.order.order_id, this.order.statusName())));
+    }
+
+    // The order can't change any more, so only the archive needs to keep it
+    private void archiveAndPassivate() {
+        if (!archive.enabled())
+            return;
+        // An order too large for the archive stays resident in this actor
+        if (!archive.append(this.order))
+            return;
+        archived = true;
+        shard.tell(new ClusterSharding.Passivate<>(getContext().getSelf()));
+    }
+
+    private Behavior<Command> onIdle(Idle command) {
+        if (this.order == null || archived)
+            shard.tell(new ClusterSharding.Passivate<>(getContext().getSelf()));
         return Behaviors.same();
     }
 }
@@ -0,0 +1,5 @@
+package com.keval.pods.order;
+
+// Outcome of one order of POST /orders/batch, with the status POST /orders would have answered:
+// 201 and the placed order, 400 and no order, or 504 and the order (with its order_id) if it's still being placed
+public record OrderResult(int status, Order order) {}
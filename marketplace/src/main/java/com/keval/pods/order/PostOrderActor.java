@@ -1,20 +1,27 @@
 package com.keval.pods.order;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.keval.pods.CborSerializable;
-import com.keval.pods.Routes;
 import com.keval.pods.client.UsersClient;
 import com.keval.pods.client.WalletsClient;
 import com.keval.pods.client.model.User;
 import com.keval.pods.client.model.WalletTrxn;
+import com.keval.pods.metrics.LatencyHistogram;
+import com.keval.pods.metrics.Metrics;
+import com.keval.pods.pool.WorkerLoad;
 import com.keval.pods.product.Product;
 import com.keval.pods.product.ProductActor;
+import com.keval.pods.trace.OrderTrace;
+import com.keval.pods.trace.TraceContext;
+import com.keval.pods.trace.Tracing;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
@@ -22,48 +29,87 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
 import akka.cluster.sharding.typed.javadsl.ClusterSharding;
 import akka.cluster.sharding.typed.javadsl.EntityRef;
 
 public class PostOrderActor extends AbstractBehavior<PostOrderActor.Command> {
-    private final static Logger log = LoggerFactory.getLogger(Routes.class);
+    private final static Logger log = LoggerFactory.getLogger(PostOrderActor.class);
 
     public interface Command extends CborSerializable {}
-    public static final record PostOrderRequest(Order order, ActorRef<Order> replyTo) implements Command {}
-    public static final record GetProductInfoResponse(Integer order_id, Product product) implements Command {}
-    public static final record DecreaseProductStockResponse(Integer order_id, Integer product_id, Boolean successful) implements Command {}
+    public static final record PostOrderRequest(Order order, ActorRef<Order> replyTo, TraceContext trace) implements Command {}
+    // Replies from ProductActors carry the index of the order's item they answer
+    public static final record GetProductInfoResponse(Integer order_id, int item, Product product) implements Command {}
+    public static final record DecreaseProductStockResponse(Integer order_id, int item, Integer product_id, Boolean successful) implements Command {}
+    // Responses to one worker's DecreaseProductStocks decided in the same ProductActor batch
+    public static final record DecreaseProductStockResponses(List<DecreaseProductStockResponse> responses) implements Command {}
     public static final record OrderSuccessful(Integer order_id) implements Command {}
+    private static final record ReleaseStuckSagas() implements Command {}
+
+    // Saga stages, timed into metrics for every order and into the trace of sampled ones
+    private enum Stage {
+        PRODUCT_INFO("product_info"),
+        USER_LOOKUP("user_lookup"),
+        DEBIT("debit"),
+        STOCK_DECREASE("stock_decrease"),
+        COMPLETE("complete");
+
+        final String label;
+        final LatencyHistogram latency;
+
+        Stage(String label) {
+            this.label = label;
+            this.latency = Metrics.histogram("marketplace_post_order_stage_seconds", "Order placement saga stage latency", "stage", label);
+        }
+    }
+
+    // Latency of whole sagas by outcome
+    private static final LatencyHistogram placedSagas =
+            Metrics.histogram("marketplace_post_order_saga_seconds", "Order placement saga latency by outcome", "outcome", "placed");
+    private static final LatencyHistogram failedSagas =
+            Metrics.histogram("marketplace_post_order_saga_seconds", "Order placement saga latency by outcome", "outcome", "failed");
 
     // ClusterSharding instance
     private final ClusterSharding sharding;
 
-    // Actors to replyTo with final order after placement mapped by order_id
-    private Map<Integer, ActorRef<Order>> replyMap = new HashMap<>();
-    // Order objects for this PostOrderActor mapped by order_id
-    private Map<Integer, Order> orders = new HashMap<>();
-    // User objects corresponding to the orders mapped by order_id
-    private Map<Integer, User> users = new HashMap<>();
+    // State of this worker's orders in progress mapped by order_id
+    private final SagaStates sagas = new SagaStates();
 
     // Utility client for communicating with the Users service
-    private UsersClient usersClient = new UsersClient();
+    private final UsersClient usersClient;
     // Utility client for communicating with the Wallets service
-    private WalletsClient walletsClient = new WalletsClient();
-
-    // OrderId mapped maps for all order_items in the order request mapped by product_id. Used to merge duplicate order items.
-    private Map<Integer, Map<Integer, Order.OrderItem>> ordersRequestedOrderItems = new HashMap<>();
-    // OrderId mapped maps for all product details
-    private Map<Integer, Map<Integer, Product>> ordersProductInfos = new HashMap<>();
-    // OrderId mapped maps for all DecreaseProductStock success statuses
-    private Map<Integer, Map<Integer, Boolean>> ordersDecreaseProductStockResponses = new HashMap<>();
+    private final WalletsClient walletsClient;
+    // Requests in flight for the WorkerPool routing to this worker
+    private final WorkerLoad load;
+    // Sagas running longer than this are checked for replies that never came
+    private final long sagaTimeoutNanos;
+    private final List<SagaState> stuckSagas = new ArrayList<>();
 
     // Actor initialized with replyTo
     public static Behavior<Command> create() {
-        return Behaviors.setup(context -> new PostOrderActor(context));
+        return create(new UsersClient(), new WalletsClient());
+    }
+
+    // Actor initialized with the given service clients (e.g. stubs for benchmarks)
+    public static Behavior<Command> create(UsersClient usersClient, WalletsClient walletsClient) {
+        return create(usersClient, walletsClient, new WorkerLoad());
+    }
+
+    // Actor reporting the end of each saga to the WorkerPool that owns it
+    public static Behavior<Command> create(UsersClient usersClient, WalletsClient walletsClient, WorkerLoad load) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new PostOrderActor(context, timers, usersClient, walletsClient, load)));
     }
 
-    private PostOrderActor(ActorContext<Command> context) {
+    private PostOrderActor(ActorContext<Command> context, TimerScheduler<Command> timers, UsersClient usersClient, WalletsClient walletsClient, WorkerLoad load) {
         super(context);
         this.sharding = ClusterSharding.get(context.getSystem());
+        this.usersClient = usersClient;
+        this.walletsClient = walletsClient;
+        this.load = load;
+
+        Duration sagaTimeout = context.getSystem().settings().config().getDuration("marketplace-app.worker-pools.saga-timeout");
+        this.sagaTimeoutNanos = sagaTimeout.toNanos();
+        timers.startTimerWithFixedDelay(new ReleaseStuckSagas(), sagaTimeout);
     }
 
     @Override
@@ -72,69 +118,96 @@ public class PostOrderActor extends AbstractBehavior<PostOrderActor.Command> {
                 .onMessage(PostOrderRequest.class, this::onPostOrderRequest)
                 .onMessage(GetProductInfoResponse.class, this::onGetProductInfoResponse)
                 .onMessage(DecreaseProductStockResponse.class, this::onDecreaseProductStockResponse)
+                .onMessage(DecreaseProductStockResponses.class, this::onDecreaseProductStockResponses)
                 .onMessage(OrderSuccessful.class, this::onOrderSuccessful)
+                .onMessage(ReleaseStuckSagas.class, this::onReleaseStuckSagas)
                 .build();
     }
 
 	  // Helper method to clear state related to any order from the worker
-    private void clearOrderState(Integer order_id) {
-        log.info("{} clearing state for order {}", getContext().getSelf().path().name(), order_id);  
-        this.orders.remove(order_id);
-        this.replyMap.remove(order_id);
-        this.ordersRequestedOrderItems.remove(order_id);
-        this.ordersProductInfos.remove(order_id);
-        this.ordersDecreaseProductStockResponses.remove(order_id);
-    }
+    private void clearOrderState(SagaState saga) {
+        log.debug("{} clearing state for order {}", getContext().getSelf().path().name(), saga.orderId);
+
+        // Orders reaching here with PLACED status went through the whole saga, all others failed
+        boolean placed = Order.STATUS_PLACED.equals(saga.order.status);
+        long sagaNanos = System.nanoTime() - saga.sagaStartNanos;
+        (placed ? placedSagas : failedSagas).observeNanos(sagaNanos);
+        if (!saga.loadReleased)
+            load.finished(sagaNanos);
+
+        if (saga.stagesMicros != null) {
+            Tracing.record(new OrderTrace(saga.trace.traceIdHex(), saga.orderId, placed ? "placed" : "failed",
+                    saga.startedAtMillis, sagaNanos / 1000, saga.stagesMicros, List.of()));
+        }
 
-    private Behavior<Command> onPostOrderRequest(PostOrderRequest command) {
-        log.info("{} received order {}", getContext().getSelf().path().name(), command.order);
+        sagas.release(saga);
+    }
 
-		    // Add order and replyTo to this worker's mapping
-        this.orders.put(command.order.order_id, command.order);
-		    this.replyMap.put(command.order.order_id, command.replyTo);
+    // Fails the order: replies with a null order and clears its state
+    private void failOrder(SagaState saga) {
+        saga.replyTo.tell(new Order());
+        clearOrderState(saga);
+    }
 
-        Order order = this.orders.get(command.order.order_id);
-        ActorRef<Order> replyTo = this.replyMap.get(order.order_id);
+    // Records the latency of the stage that just finished for the order and starts timing the next one
+    private void endStage(SagaState saga, Stage stage) {
+        long now = System.nanoTime();
+        long stageNanos = now - saga.stageStartNanos;
+        saga.stageStartNanos = now;
 
-        // Initialize maps for received orderId
-        this.ordersRequestedOrderItems.put(order.order_id, new HashMap<>());
-        this.ordersProductInfos.put(order.order_id, new HashMap<>());
-        this.ordersDecreaseProductStockResponses.put(order.order_id, new HashMap<>());
+        stage.latency.observeNanos(stageNanos);
+        if (saga.stagesMicros != null)
+            saga.stagesMicros.put(stage.label, stageNanos / 1000);
+    }
 
-        Map<Integer, Order.OrderItem> requestedOrderItems = this.ordersRequestedOrderItems.get(order.order_id);
+    private Behavior<Command> onPostOrderRequest(PostOrderRequest command) {
+        log.debug("{} received order {}", getContext().getSelf().path().name(), command.order);
+
+        // Add order and replyTo to this worker's state
+        Order order = command.order;
+        SagaState saga = sagas.acquire(order.order_id);
+        saga.order = order;
+        saga.replyTo = command.replyTo;
+        saga.trace = command.trace;
+        saga.sagaStartNanos = saga.stageStartNanos = System.nanoTime();
+        if (command.trace.sampled()) {
+            saga.startedAtMillis = System.currentTimeMillis();
+            saga.stagesMicros = new LinkedHashMap<>();
+        }
 
         // Check if the order has items, fail otherwise
         if (order.items.size() == 0)  {
-          log.info("{} failed on order {}: Empty items list", getContext().getSelf().path().name(), order.order_id);
-          replyTo.tell(new Order());
-		      clearOrderState(order.order_id);
+          log.debug("{} failed on order {}: Empty items list", getContext().getSelf().path().name(), order.order_id);
+          failOrder(saga);
           return Behaviors.same();
         }
 
-        // Go through all order_items and store them in requestedOrderItems while merging duplicates
-        for (Order.OrderItem orderItem : order.items) {
+        // Go through all order_items and store them in the saga while merging duplicates
+        for (int i = 0; i < order.items.size(); i++) {
+            Order.OrderItem orderItem = order.items.get(i);
             // If quantity is non-positive, fail
             if (orderItem.quantity <= 0) {
-                log.info("{} failed on order {}: Non-positive item quantity", getContext().getSelf().path().name(), order.order_id);
-                replyTo.tell(new Order());
-				        clearOrderState(order.order_id);
+                log.debug("{} failed on order {}: Non-positive item quantity", getContext().getSelf().path().name(), order.order_id);
+                failOrder(saga);
                 return Behaviors.same();
             }
 
-            // Merge duplicate or add new orderItem to the map
-            if (requestedOrderItems.containsKey(orderItem.product_id)) {
-                Order.OrderItem storedOrderItem = requestedOrderItems.get(orderItem.product_id);
-                storedOrderItem.quantity += orderItem.quantity;
+            // Merge duplicate into the first item for the product (which the placed order reports), or add a new item
+            int item = saga.indexOf(orderItem.product_id);
+            if (item >= 0) {
+                saga.quantities[item] += orderItem.quantity;
+                order.items.get(saga.firstItems[item]).quantity = saga.quantities[item];
             }
             else {
-                requestedOrderItems.put(orderItem.product_id, orderItem);
+                saga.addItem(orderItem.product_id, orderItem.quantity, i);
             }
         }
 
         // Send GetProductInfo for all order_items
-        for (Integer product_id : requestedOrderItems.keySet()) {
-            EntityRef<ProductActor.Command> productActor = sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + product_id);
-            productActor.tell(new ProductActor.GetProductInfoPostOrder(order.order_id, getContext().getSelf()));
+        saga.expectReplies();
+        for (int item = 0; item < saga.itemCount; item++) {
+            EntityRef<ProductActor.Command> productActor = sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + saga.productIds[item]);
+            productActor.tell(new ProductActor.GetProductInfoPostOrder(order.order_id, item, getContext().getSelf(), command.trace));
         }
 
         return Behaviors.same();
@@ -143,57 +216,56 @@ public class PostOrderActor extends AbstractBehavior<PostOrderActor.Command> {
     private Behavior<Command> onGetProductInfoResponse(GetProductInfoResponse command) {
       Product product = command.product;
 
-      Order order = this.orders.get(command.order_id);
-      ActorRef<Order> replyTo = this.replyMap.get(command.order_id);
-
-      Map<Integer, Order.OrderItem> requestedOrderItems = this.ordersRequestedOrderItems.get(command.order_id);
-      Map<Integer, Product> productInfos = this.ordersProductInfos.get(command.order_id);
+      // Ignore replies for orders that already failed
+      SagaState saga = sagas.get(command.order_id);
+      if (saga == null)
+        return Behaviors.same();
+      Order order = saga.order;
 
       // If null product, invalid product_id, fail response
       if (product.id == null) {
-        log.info("{} failed on order {}: invalid order_item {}", getContext().getSelf().path().name(), command.order_id, product.id);
-        replyTo.tell(new Order());
-		    clearOrderState(command.order_id);
+        log.debug("{} failed on order {}: invalid order_item {}", getContext().getSelf().path().name(), command.order_id, product.id);
+        failOrder(saga);
         return Behaviors.same();
       }
 
-      // Add product info to product info map
-      productInfos.put(product.id, product);
+      // Add product info to the item
+      if (!saga.reply(command.item, SagaState.SUCCEEDED))
+        return Behaviors.same();
+      saga.prices[command.item] = product.price;
+      saga.stocks[command.item] = product.stock_quantity;
 
       // If all product infos have not been received, wait for more GetProductInfoResponses
-      if (!productInfos.keySet().equals(requestedOrderItems.keySet()))
+      if (saga.pendingReplies > 0)
         return Behaviors.same();
 
       // ==== After all product infos have been received ====
-      
+      endStage(saga, Stage.PRODUCT_INFO);
+
       // Check for sufficient stock and compute total price
       order.total_price = 0;
-      for (Integer product_id : productInfos.keySet()) {
-        Product productInfo = productInfos.get(product_id);
-        Order.OrderItem orderItem = requestedOrderItems.get(product_id);
-
-        if (productInfo.stock_quantity < orderItem.quantity) {
-          log.info("{} failed on order {}: insufficient stock while checking", getContext().getSelf().path().name(), order.order_id);
-          replyTo.tell(new Order());
-		      clearOrderState(command.order_id);
+      for (int item = 0; item < saga.itemCount; item++) {
+        if (saga.stocks[item] < saga.quantities[item]) {
+          log.debug("{} failed on order {}: insufficient stock while checking", getContext().getSelf().path().name(), order.order_id);
+          failOrder(saga);
           return Behaviors.same();
         }
 
-        order.total_price += orderItem.quantity * productInfo.price;
+        order.total_price += saga.quantities[item] * saga.prices[item];
       }
 
       // Check if user exists
       Optional<User> userOptional = usersClient.getUserById(order.user_id);
+      endStage(saga, Stage.USER_LOOKUP);
       if (userOptional.isEmpty()) {
-        log.info("{} failed on order {}: invalid user {}", getContext().getSelf().path().name(), order.order_id, order.user_id);
-        replyTo.tell(new Order());
-		    clearOrderState(command.order_id);
+        log.debug("{} failed on order {}: invalid user {}", getContext().getSelf().path().name(), order.order_id, order.user_id);
+        failOrder(saga);
         return Behaviors.same();
       }
 
       // Successfully obtained user info
-      this.users.put(command.order_id, userOptional.get());
-      User user = this.users.get(command.order_id);
+      saga.user = userOptional.get();
+      User user = saga.user;
 
       // Apply discount if available
       if (!user.discount_availed) {
@@ -202,42 +274,47 @@ public class PostOrderActor extends AbstractBehavior<PostOrderActor.Command> {
 
       // Debit user
       Integer debitStatus = walletsClient.putWalletTrxn(order.user_id, new WalletTrxn(WalletTrxn.DEBIT, order.total_price));
-      
+      endStage(saga, Stage.DEBIT);
+
       // If debit fails, fail order
       if (debitStatus != 200) {
-        log.info("{} failed on order {}: failed to debit wallet {} for amount {}", getContext().getSelf().path().name(), order.order_id, order.user_id, order.total_price);
-        replyTo.tell(new Order());
-		    clearOrderState(command.order_id);
+        log.debug("{} failed on order {}: failed to debit wallet {} for amount {}", getContext().getSelf().path().name(), order.order_id, order.user_id, order.total_price);
+        failOrder(saga);
         return Behaviors.same();
       }
 
       // Send DecreaseProductStock messages to all products in the order
-      for (Integer product_id : requestedOrderItems.keySet()) {
-        EntityRef<ProductActor.Command> productActor = sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + product_id);
-        productActor.tell(new ProductActor.DecreaseProductStock(command.order_id, getContext().getSelf(), requestedOrderItems.get(product_id).quantity));
+      saga.expectReplies();
+      for (int item = 0; item < saga.itemCount; item++) {
+        EntityRef<ProductActor.Command> productActor = sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + saga.productIds[item]);
+        productActor.tell(new ProductActor.DecreaseProductStock(command.order_id, item, getContext().getSelf(), saga.quantities[item], saga.trace));
       }
 
       return Behaviors.same();
     }
 
     private Behavior<Command> onDecreaseProductStockResponse(DecreaseProductStockResponse command) {
-      Order order = this.orders.get(command.order_id);
-      ActorRef<Order> replyTo = this.replyMap.get(command.order_id);
-
-      Map<Integer, Order.OrderItem> requestedOrderItems = this.ordersRequestedOrderItems.get(command.order_id);
-      Map<Integer, Boolean> decreaseProductStockResponses = this.ordersDecreaseProductStockResponses.get(command.order_id);
+      SagaState saga = sagas.get(command.order_id);
+      if (saga == null)
+        return Behaviors.same();
+      Order order = saga.order;
 
-      // Add response to the response map
-      decreaseProductStockResponses.put(command.product_id, command.successful);
+      // Add response to the item
+      if (!saga.reply(command.item, command.successful ? SagaState.SUCCEEDED : SagaState.FAILED))
+        return Behaviors.same();
 
       // If responses from all products have not been received, keep waiting
-      if (!decreaseProductStockResponses.keySet().equals(requestedOrderItems.keySet()))
+      if (saga.pendingReplies > 0)
         return Behaviors.same();
-      
+
       // ==== After responses from all products have been received ====
+      endStage(saga, Stage.STOCK_DECREASE);
 
       // If all stock decreases were successful, proceed to OrderSuccessful stage
-      if (!decreaseProductStockResponses.containsValue(false)) {
+      boolean allDecreased = true;
+      for (int item = 0; item < saga.itemCount; item++)
+        allDecreased &= saga.replies[item] == SagaState.SUCCEEDED;
+      if (allDecreased) {
         getContext().getSelf().tell(new OrderSuccessful(command.order_id));
         return Behaviors.same();
       }
@@ -245,10 +322,10 @@ public class PostOrderActor extends AbstractBehavior<PostOrderActor.Command> {
       // ==== If atleast one of the stock decreases were unsuccessful ====
 
       // Restock successfully decreased products
-      for (Integer product_id : decreaseProductStockResponses.keySet()) {
-        if (decreaseProductStockResponses.get(product_id) == true) {
-          EntityRef<ProductActor.Command> productActor = sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + product_id);
-          productActor.tell(new ProductActor.IncreaseProductStock(requestedOrderItems.get(product_id).quantity));
+      for (int item = 0; item < saga.itemCount; item++) {
+        if (saga.replies[item] == SagaState.SUCCEEDED) {
+          EntityRef<ProductActor.Command> productActor = sharding.entityRefFor(ProductActor.ENTITY_TYPE_KEY, ProductActor.IdPrefix + saga.productIds[item]);
+          productActor.tell(new ProductActor.IncreaseProductStock(saga.quantities[item]));
         }
       }
 
@@ -256,38 +333,67 @@ public class PostOrderActor extends AbstractBehavior<PostOrderActor.Command> {
       Integer refundStatus = walletsClient.putWalletTrxn(order.user_id, new WalletTrxn(WalletTrxn.CREDIT, order.total_price));
 
       if (refundStatus != 200) {
-        log.info("{} warning on order {}: failed to credit wallet {} with status {}", getContext().getSelf().path().name(), order.order_id, order.user_id, refundStatus);
+        log.warn("{} warning on order {}: failed to credit wallet {} with status {}", getContext().getSelf().path().name(), order.order_id, order.user_id, refundStatus);
       }
-      
+
       // Control only reaches here if the order has failed
-      replyTo.tell(new Order());
-      clearOrderState(command.order_id);
+      failOrder(saga);
+      return Behaviors.same();
+    }
+
+    private Behavior<Command> onDecreaseProductStockResponses(DecreaseProductStockResponses command) {
+      for (DecreaseProductStockResponse response : command.responses)
+        onDecreaseProductStockResponse(response);
       return Behaviors.same();
     }
-    
+
     private Behavior<Command> onOrderSuccessful(OrderSuccessful command) {
-      Order order = this.orders.get(command.order_id);
-      User user = this.users.get(command.order_id);
-      ActorRef<Order> replyTo = this.replyMap.get(command.order_id);
+      SagaState saga = sagas.get(command.order_id);
+      if (saga == null)
+        return Behaviors.same();
+      Order order = saga.order;
+      User user = saga.user;
+      ActorRef<Order> replyTo = saga.replyTo;
 
       // If discount was availed, send request to Users service to update discount_availed field
       if (!user.discount_availed) {
         Integer setDiscountAvailedStatus = usersClient.setUserDiscountAvailed(order.user_id, true);
         if (setDiscountAvailedStatus != 202)
-          log.info("{} warning on order {}: failed to set discount_availed for user {} with status {}", getContext().getSelf().path().name(), order.order_id, order.user_id, setDiscountAvailedStatus);
-      } 
-      
+          log.warn("{} warning on order {}: failed to set discount_availed for user {} with status {}", getContext().getSelf().path().name(), order.order_id, order.user_id, setDiscountAvailedStatus);
+      }
+
       // Create a new sharded OrderActor for the successfully placed order
       order.status = Order.STATUS_PLACED;
 
       EntityRef<OrderActor.Command> orderEntityRef = sharding.entityRefFor(OrderActor.ENTITY_TYPE_KEY, OrderActor.IdPrefix + order.order_id);
-      orderEntityRef.tell(new OrderActor.InitializeOrder(order));
+      orderEntityRef.tell(new OrderActor.InitializeOrder(order, saga.trace));
 
       // Send order object to routes for sending response
+      endStage(saga, Stage.COMPLETE);
       replyTo.tell(order);
 
       // Clear order state from this worker
-      clearOrderState(command.order_id);
+      clearOrderState(saga);
+      return Behaviors.same();
+    }
+
+    // Sagas still waiting for ProductActor replies after saga-timeout (e.g. lost with a node): their requests timed out
+    // long ago, so they stop counting as in flight for the WorkerPool. One waiting for product info has changed nothing
+    // yet and is failed; one waiting for stock decreases has debited the wallet, so it stays to compensate on late replies
+    private Behavior<Command> onReleaseStuckSagas(ReleaseStuckSagas command) {
+      long now = System.nanoTime();
+      sagas.collectStartedBefore(now - sagaTimeoutNanos, stuckSagas);
+      for (SagaState saga : stuckSagas) {
+        if (saga.user == null) {
+          log.warn("{} failed on order {}: no product info after {}ms", getContext().getSelf().path().name(), saga.orderId, (now - saga.sagaStartNanos) / 1_000_000);
+          failOrder(saga);
+        } else if (!saga.loadReleased) {
+          log.warn("{} still waiting on stock decreases for order {} after {}ms", getContext().getSelf().path().name(), saga.orderId, (now - saga.sagaStartNanos) / 1_000_000);
+          saga.loadReleased = true;
+          load.finished(now - saga.sagaStartNanos);
+        }
+      }
+      stuckSagas.clear();
       return Behaviors.same();
     }
 }
@@ -0,0 +1,94 @@
+package com.keval.pods.order;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.keval.pods.client.model.User;
+import com.keval.pods.trace.TraceContext;
+
+import akka.actor.typed.ActorRef;
+
+// Everything a PostOrderActor tracks for one order in progress
+// Instances are pooled by SagaStates and reused, so the per-item arrays only grow to the largest order a worker has seen
+final class SagaState {
+
+    // Outcome of the reply for one item in the current stage
+    static final byte PENDING = 0;
+    static final byte SUCCEEDED = 1;
+    static final byte FAILED = 2;
+
+    int orderId;
+    Order order;
+    ActorRef<Order> replyTo;
+    User user;
+    TraceContext trace;
+    long sagaStartNanos;
+    long stageStartNanos;
+    // Set once the saga outlived saga-timeout and its request stopped counting as in flight for the WorkerPool
+    boolean loadReleased;
+    // Sampled orders only: wall-clock start and stage durations for the trace
+    long startedAtMillis;
+    Map<String, Long> stagesMicros;
+
+    // Distinct products of the order, in request order; duplicates are merged into the first item requesting the product
+    int itemCount;
+    int[] productIds = new int[4];
+    int[] quantities = new int[4];
+    int[] firstItems = new int[4];
+    int[] prices = new int[4];
+    int[] stocks = new int[4];
+    byte[] replies = new byte[4];
+    // Replies still expected in the current stage
+    int pendingReplies;
+
+    // Index of the product among the distinct items, -1 if it's new; orders have a handful of items, so a scan beats hashing
+    int indexOf(int productId) {
+        for (int item = 0; item < itemCount; item++)
+            if (productIds[item] == productId)
+                return item;
+        return -1;
+    }
+
+    void addItem(int productId, int quantity, int firstItem) {
+        if (itemCount == productIds.length) {
+            int capacity = itemCount * 2;
+            productIds = Arrays.copyOf(productIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            firstItems = Arrays.copyOf(firstItems, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            stocks = Arrays.copyOf(stocks, capacity);
+            replies = Arrays.copyOf(replies, capacity);
+        }
+        productIds[itemCount] = productId;
+        quantities[itemCount] = quantity;
+        firstItems[itemCount] = firstItem;
+        itemCount++;
+    }
+
+    // Starts a stage with one reply expected per item
+    void expectReplies() {
+        Arrays.fill(replies, 0, itemCount, PENDING);
+        pendingReplies = itemCount;
+    }
+
+    // Records the reply for an item, false if it's not one this stage is waiting for (e.g. a duplicate)
+    boolean reply(int item, byte outcome) {
+        if (item < 0 || item >= itemCount || replies[item] != PENDING)
+            return false;
+        replies[item] = outcome;
+        pendingReplies--;
+        return true;
+    }
+
+    // Drops references to the finished order so a pooled state holds nothing alive
+    void reset() {
+        order = null;
+        replyTo = null;
+        user = null;
+        trace = null;
+        stagesMicros = null;
+        itemCount = 0;
+        pendingReplies = 0;
+        loadReleased = false;
+    }
+}
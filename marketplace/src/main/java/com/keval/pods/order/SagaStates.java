@@ -0,0 +1,97 @@
+package com.keval.pods.order;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+// order_id -> SagaState of a PostOrderActor's orders in progress: open addressing with linear probing over a primitive key array,
+// and released states pooled for the next orders, so once warm a saga costs no allocation here
+final class SagaStates {
+
+    private int[] keys = new int[16];
+    private SagaState[] states = new SagaState[16];
+    private int size;
+    private final ArrayDeque<SagaState> pool = new ArrayDeque<>();
+
+    // A state for a new order, from the pool if one is free
+    SagaState acquire(int orderId) {
+        SagaState state = pool.isEmpty() ? new SagaState() : pool.pop();
+        state.orderId = orderId;
+
+        // Keep the load factor at or below one half
+        if ((size + 1) * 2 > keys.length)
+            resize();
+        insert(keys, states, orderId, state);
+        size++;
+        return state;
+    }
+
+    // The order's state, or null if it isn't in progress (e.g. a late reply to a failed order)
+    SagaState get(int orderId) {
+        int mask = keys.length - 1;
+        for (int slot = mix(orderId) & mask; states[slot] != null; slot = (slot + 1) & mask)
+            if (keys[slot] == orderId)
+                return states[slot];
+        return null;
+    }
+
+    // Adds the states of orders whose saga started before the given System.nanoTime
+    void collectStartedBefore(long nanos, List<SagaState> into) {
+        for (SagaState state : states)
+            if (state != null && state.sagaStartNanos - nanos < 0)
+                into.add(state);
+    }
+
+    void release(SagaState state) {
+        remove(state.orderId);
+        state.reset();
+        pool.push(state);
+    }
+
+    private static void insert(int[] keys, SagaState[] states, int key, SagaState state) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (states[slot] != null)
+            slot = (slot + 1) & mask;
+        keys[slot] = key;
+        states[slot] = state;
+    }
+
+    // Backward-shift deletion, so lookups never need tombstones
+    private void remove(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (states[slot] != null && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        if (states[slot] == null)
+            return;
+
+        states[slot] = null;
+        size--;
+        for (int next = (slot + 1) & mask; states[next] != null; next = (next + 1) & mask) {
+            int home = mix(keys[next]) & mask;
+            // Move the entry into the hole if the hole lies between its home slot and where it sits
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                states[slot] = states[next];
+                states[next] = null;
+                slot = next;
+            }
+        }
+    }
+
+    private void resize() {
+        int[] newKeys = new int[keys.length * 2];
+        SagaState[] newStates = new SagaState[states.length * 2];
+        for (int slot = 0; slot < keys.length; slot++)
+            if (states[slot] != null)
+                insert(newKeys, newStates, keys[slot], states[slot]);
+        keys = newKeys;
+        states = newStates;
+    }
+
+    // Order IDs are sequential, so spread them before masking
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,5 @@
+package com.keval.pods.order;
+
+// Outcome of one line of POST /orders/stream; results are written as their orders complete,
+// so `line` (1-based, of the request body) ties each back to its CreateOrderRequest
+public record StreamedOrderResult(long line, int status, Order order) {}
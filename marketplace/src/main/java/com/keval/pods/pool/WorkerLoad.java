@@ -0,0 +1,38 @@
+package com.keval.pods.pool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load of one worker, shared between the worker and the WorkerPool routing to it
+// The pool counts a request as started when it forwards it; the worker reports it finished when its saga ends,
+// so requests in flight cover both the worker's mailbox and the sagas it is waiting on
+public final class WorkerLoad {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+
+    void started() {
+        inFlight.incrementAndGet();
+    }
+
+    // Called by the worker once per request, whatever its outcome
+    public void finished(long requestNanos) {
+        inFlight.decrementAndGet();
+        finished.increment();
+        latencyNanos.add(requestNanos);
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    // Requests finished and their summed latency since the last sample
+    long finishedThenReset() {
+        return finished.sumThenReset();
+    }
+
+    long latencyNanosThenReset() {
+        return latencyNanos.sumThenReset();
+    }
+}
@@ -0,0 +1,200 @@
+package com.keval.pods.pool;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.Gauge;
+import com.keval.pods.metrics.Metrics;
+import com.typesafe.config.Config;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.Terminated;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.actor.typed.receptionist.ServiceKey;
+
+// Node-local pool of saga workers (PostOrderActors or DeleteOrderActors), registered with the receptionist in their place
+// Each request goes to the less loaded of two workers picked at random, so a worker stuck on a slow service call
+// stops collecting requests. Every sample-interval the pool grows when its workers average more than target-in-flight
+// requests or take longer than latency-target, and after scale-down-delay of low load retires one idle worker per sample
+public class WorkerPool<T> extends AbstractBehavior<Object> {
+    private final static Logger log = LoggerFactory.getLogger(WorkerPool.class);
+
+    private static final record Sample() {}
+
+    private static final record Worker<T>(ActorRef<T> ref, WorkerLoad load) {}
+
+    private final String pool;
+    private final String workerName;
+    private final Class<T> requestClass;
+    private final Function<WorkerLoad, Behavior<T>> createWorker;
+    private final Props workerProps;
+
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final double targetInFlight;
+    private final long latencyTargetNanos;
+    private final long scaleDownDelayNanos;
+
+    private final Gauge size;
+    private final Counter scaledUp;
+    private final Counter scaledDown;
+
+    private final List<Worker<T>> workers = new ArrayList<>();
+    private int nextWorkerId;
+    private long busySinceNanos = System.nanoTime();
+
+    // Settings from marketplace-app.worker-pools, where the block named `pool` overrides the shared ones
+    public static <T> Behavior<Object> create(String pool, String workerName, Class<T> requestClass, ServiceKey<T> serviceKey,
+                                              Function<WorkerLoad, Behavior<T>> createWorker, Props workerProps, Config config) {
+        Config settings = config.getConfig(pool).withFallback(config);
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> {
+            Duration sampleInterval = settings.getDuration("sample-interval");
+            timers.startTimerWithFixedDelay(new Sample(), sampleInterval);
+            return new WorkerPool<>(context, pool, workerName, requestClass, serviceKey, createWorker, workerProps, settings);
+        }));
+    }
+
+    private WorkerPool(ActorContext<Object> context, String pool, String workerName, Class<T> requestClass, ServiceKey<T> serviceKey,
+                       Function<WorkerLoad, Behavior<T>> createWorker, Props workerProps, Config settings) {
+        super(context);
+        this.pool = pool;
+        this.workerName = workerName;
+        this.requestClass = requestClass;
+        this.createWorker = createWorker;
+        this.workerProps = workerProps;
+        this.minWorkers = settings.getInt("min-workers");
+        this.maxWorkers = settings.getInt("max-workers");
+        this.targetInFlight = settings.getDouble("target-in-flight");
+        this.latencyTargetNanos = settings.getDuration("latency-target").toNanos();
+        this.scaleDownDelayNanos = settings.getDuration("scale-down-delay").toNanos();
+
+        this.size = Metrics.gauge("marketplace_worker_pool_size", "Workers in the node's pool", "pool", pool);
+        this.scaledUp = Metrics.counter("marketplace_worker_pool_resizes_total", "Workers added to or retired from the node's pool", "pool", pool, "direction", "up");
+        this.scaledDown = Metrics.counter("marketplace_worker_pool_resizes_total", "Workers added to or retired from the node's pool", "pool", pool, "direction", "down");
+
+        int initialWorkers = Math.max(minWorkers, Math.min(maxWorkers, settings.getInt("initial-workers")));
+        for (int i = 0; i < initialWorkers; i++)
+            spawnWorker();
+
+        // The Gateway's group router now sees one pool per node instead of every worker
+        ActorRef<T> self = context.getSelf().narrow();
+        context.getSystem().receptionist().tell(Receptionist.register(serviceKey, self));
+    }
+
+    @Override
+    public Receive<Object> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(requestClass, this::onRequest)
+                .onMessage(Sample.class, this::onSample)
+                .onSignal(Terminated.class, this::onTerminated)
+                .build();
+    }
+
+    private void spawnWorker() {
+        WorkerLoad load = new WorkerLoad();
+        ActorRef<T> ref = getContext().spawn(createWorker.apply(load), workerName + nextWorkerId++, workerProps);
+        getContext().watch(ref);
+        workers.add(new Worker<>(ref, load));
+        size.increment();
+    }
+
+    // Power of two choices: nearly the balance of picking the least loaded worker, without scanning them all
+    private Behavior<Object> onRequest(T request) {
+        Worker<T> worker = workers.get(0);
+        int count = workers.size();
+        if (count > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(count);
+            int second = random.nextInt(count - 1);
+            if (second >= first)
+                second++;
+            Worker<T> a = workers.get(first);
+            Worker<T> b = workers.get(second);
+            worker = a.load.inFlight() <= b.load.inFlight() ? a : b;
+        }
+
+        worker.load.started();
+        worker.ref.tell(request);
+        return Behaviors.same();
+    }
+
+    private Behavior<Object> onSample(Sample sample) {
+        long inFlight = 0;
+        long finished = 0;
+        long latencyNanos = 0;
+        for (Worker<T> worker : workers) {
+            inFlight += worker.load.inFlight();
+            finished += worker.load.finishedThenReset();
+            latencyNanos += worker.load.latencyNanosThenReset();
+        }
+        double inFlightPerWorker = workers.isEmpty() ? 0 : (double) inFlight / workers.size();
+        long meanLatencyNanos = finished == 0 ? 0 : latencyNanos / finished;
+        long now = System.nanoTime();
+
+        // Replace crashed workers
+        while (workers.size() < minWorkers)
+            spawnWorker();
+
+        if (inFlightPerWorker > targetInFlight || meanLatencyNanos > latencyTargetNanos) {
+            busySinceNanos = now;
+            // Grow by a quarter, so a burst is absorbed within a few samples
+            int added = Math.min(maxWorkers - workers.size(), Math.max(1, workers.size() / 4));
+            for (int i = 0; i < added; i++)
+                spawnWorker();
+            if (added > 0) {
+                scaledUp.add(added);
+                log.info("{} pool grew to {} workers ({} in flight per worker, {}ms mean latency)",
+                        pool, workers.size(), String.format("%.1f", inFlightPerWorker), meanLatencyNanos / 1_000_000);
+            }
+        } else if (inFlightPerWorker >= targetInFlight / 2) {
+            busySinceNanos = now;
+        } else if (now - busySinceNanos >= scaleDownDelayNanos && workers.size() > minWorkers) {
+            retireIdleWorker();
+        }
+        return Behaviors.same();
+    }
+
+    // Retires the newest worker with nothing in flight; it gets no further requests once out of the list
+    private void retireIdleWorker() {
+        for (int i = workers.size() - 1; i >= 0; i--) {
+            Worker<T> worker = workers.get(i);
+            if (worker.load.inFlight() == 0) {
+                workers.remove(i);
+                size.decrement();
+                getContext().unwatch(worker.ref);
+                getContext().stop(worker.ref);
+                scaledDown.increment();
+                log.debug("{} pool retired {}, {} workers left", pool, worker.ref.path().name(), workers.size());
+                return;
+            }
+        }
+    }
+
+    private Behavior<Object> onTerminated(Terminated terminated) {
+        for (int i = 0; i < workers.size(); i++) {
+            if (workers.get(i).ref.equals(terminated.getRef())) {
+                log.warn("{} pool lost worker {}", pool, terminated.getRef().path().name());
+                workers.remove(i);
+                size.decrement();
+                break;
+            }
+        }
+        // Never route into an empty pool
+        if (workers.isEmpty())
+            spawnWorker();
+        return Behaviors.same();
+    }
+}
@@ -1,7 +1,23 @@
 package com.keval.pods.product;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.keval.pods.CborSerializable;
+import com.keval.pods.events.ChangeTopics;
+import com.keval.pods.events.StockChanged;
+import com.keval.pods.logging.ActivityLog;
+import com.keval.pods.metrics.Counter;
+import com.keval.pods.metrics.Metrics;
 import com.keval.pods.order.PostOrderActor;
+import com.keval.pods.trace.TraceContext;
+import com.keval.pods.trace.Tracing;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
@@ -9,9 +25,20 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.pubsub.Topic;
 import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
 
 public class ProductActor extends AbstractBehavior<ProductActor.Command> {
+    private final static Logger log = LoggerFactory.getLogger(ProductActor.class);
+
+    // Hot-path activity, counted for the periodic summary and logged only when sampled
+    private static final ActivityLog.Category productReads = ActivityLog.category("product-reads", "product reads");
+    private static final ActivityLog.Category stockDecrements = ActivityLog.category("stock-decrements", "stock decrements");
+    private static final ActivityLog.Category stockIncrements = ActivityLog.category("stock-increments", "stock increments");
+
+    // Batches of stock decrements decided together; stock-decrements over this is the mean batch size
+    private static final Counter decrementBatches = Metrics.counter("marketplace_stock_decrement_batches_total", "Batches of stock decrements decided by ProductActors");
 
     public interface Command extends CborSerializable {}
 
@@ -19,15 +46,34 @@ public class ProductActor extends AbstractBehavior<ProductActor.Command> {
     public static final record InitializeProduct(Product product) implements Command {}
     // Get product info request for Gateway
     public static final record GetProductInfo(ActorRef<Product> replyTo) implements Command {}
+    // Get the product's encoded JSON, for GET /products/{productId}
+    public static final record GetProductJson(ActorRef<ProductJson> replyTo) implements Command {}
     // Get product info request for PostOrderActor
-    public static final record GetProductInfoPostOrder(Integer order_id, ActorRef<PostOrderActor.Command> replyTo) implements Command {}
+    public static final record GetProductInfoPostOrder(Integer order_id, int item, ActorRef<PostOrderActor.Command> replyTo, TraceContext trace) implements Command {}
     // Decrease product stock
-    public static final record DecreaseProductStock(Integer order_id, ActorRef<PostOrderActor.Command> replyTo, Integer quantity) implements Command {}
+    public static final record DecreaseProductStock(Integer order_id, int item, ActorRef<PostOrderActor.Command> replyTo, Integer quantity, TraceContext trace) implements Command {}
     // Increase product stock
     public static final record IncreaseProductStock(Integer quantity) implements Command {}
+    // Decide the buffered stock decrements
+    private static final record FlushDecrements() implements Command {}
+
+    private static final FlushDecrements FLUSH_DECREMENTS = new FlushDecrements();
 
     private Product product;
 
+    // JSON of the product up to its stock, encoded once, and the full JSON, re-encoded on the first read after a stock change
+    private byte[] jsonPrefix;
+    private ProductJson json = ProductJson.NOT_FOUND;
+
+    // Stock changes, for GET /products/stream
+    private final ActorRef<Topic.Command<StockChanged>> stockTopic;
+
+    // Stock decrements waiting to be decided, in arrival order, with the window and size that bound a batch
+    private final List<DecreaseProductStock> pendingDecrements = new ArrayList<>();
+    private final TimerScheduler<Command> timers;
+    private final Duration batchWindow;
+    private final int batchMaxSize;
+
     public static final EntityTypeKey<Command> ENTITY_TYPE_KEY =
             EntityTypeKey.create(Command.class, "ProductActor");
     
@@ -39,15 +85,19 @@ public class ProductActor extends AbstractBehavior<ProductActor.Command> {
         return name.substring(ProductActor.IdPrefix.length());
     }
 
-    public ProductActor(ActorContext<Command> context, String id) {
+    public ProductActor(ActorContext<Command> context, TimerScheduler<Command> timers, String id) {
         super(context);
         // Initialize with null product
         this.product = new Product();
+        this.stockTopic = ChangeTopics.stock(context.getSystem());
+        this.timers = timers;
+        this.batchWindow = context.getSystem().settings().config().getDuration("marketplace-app.stock-batching.window");
+        this.batchMaxSize = context.getSystem().settings().config().getInt("marketplace-app.stock-batching.max-size");
     }
 
     public static Behavior<Command> create(String id) {
-        System.out.println("ProductActor Created with name: " + ProductActor.IdPrefix + id);
-        return Behaviors.setup(context -> new ProductActor(context, id));
+        log.debug("ProductActor created with name: {}{}", ProductActor.IdPrefix, id);
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new ProductActor(context, timers, id)));
     }
 
     @Override
@@ -55,49 +105,120 @@ public class ProductActor extends AbstractBehavior<ProductActor.Command> {
         return newReceiveBuilder()
                 .onMessage(InitializeProduct.class, this::onInitializeProduct)
                 .onMessage(GetProductInfo.class, this::onGetProductInfo)
+                .onMessage(GetProductJson.class, this::onGetProductJson)
                 .onMessage(GetProductInfoPostOrder.class, this::onGetProductInfoPostOrder)
                 .onMessage(DecreaseProductStock.class, this::onDecreaseProductStock)
                 .onMessage(IncreaseProductStock.class, this::onIncreaseProductStock)
+                .onMessage(FlushDecrements.class, this::onFlushDecrements)
                 .onSignal(akka.actor.typed.Signal.class, signal -> Behaviors.stopped()) // stop on signal
                 .build();
     }
 
     private Behavior<Command> onInitializeProduct(InitializeProduct message) {
-      System.out.println(getContext().getSelf().path().name() + " received initialize product command");
-      if (this.product.id == null) this.product = message.product;
+      log.debug("{} received initialize product command", getContext().getSelf().path().name());
+      if (this.product.id == null) {
+          this.product = message.product;
+          if (this.product.id != null) {
+              this.jsonPrefix = ProductJson.prefixOf(this.product);
+              this.json = null;
+          }
+      }
       return Behaviors.same();
     }
 
     private Behavior<Command> onGetProductInfo(GetProductInfo message) {
-        System.out.println(getContext().getSelf().path().name() + " received get product command");
+        productReads.count();
+        if (productReads.sampled(log))
+            log.debug("{} received get product command", getContext().getSelf().path().name());
         message.replyTo.tell(product);
         return Behaviors.same();
     }
 
+    private Behavior<Command> onGetProductJson(GetProductJson message) {
+        productReads.count();
+        if (productReads.sampled(log))
+            log.debug("{} received get product JSON command", getContext().getSelf().path().name());
+        if (json == null)
+            json = ProductJson.of(product, jsonPrefix);
+        message.replyTo.tell(json);
+        return Behaviors.same();
+    }
+
     private Behavior<Command> onGetProductInfoPostOrder(GetProductInfoPostOrder message) {
-        System.out.println(getContext().getSelf().path().name() + " received get product command");
-        message.replyTo.tell(new PostOrderActor.GetProductInfoResponse(message.order_id, product));
+        productReads.count();
+        if (productReads.sampled(log))
+            log.debug("{} received get product command for order {}", getContext().getSelf().path().name(), message.order_id);
+        Tracing.span(message.trace, getContext().getSelf().path().name(), "GetProductInfoPostOrder");
+        message.replyTo.tell(new PostOrderActor.GetProductInfoResponse(message.order_id, message.item, product));
         return Behaviors.same();
     }
 
+    // Buffers the decrement; the batch is decided once the decrements already queued behind it have been buffered too
+    // (or after the window, if one is set), or as soon as it reaches max-size
     private Behavior<Command> onDecreaseProductStock(DecreaseProductStock message) {
-        System.out.println(getContext().getSelf().path().name() + " received DecreaseProductStock(" + message.quantity + ")");
-        
-        // If insufficient stock, reply with failure message
-        if (this.product.stock_quantity < message.quantity)
-            message.replyTo.tell(new PostOrderActor.DecreaseProductStockResponse(message.order_id, this.product.id, false));
-        // If sufficient stock, decrease and reply with success message
-        else {
-            this.product.stock_quantity -= message.quantity;
-            message.replyTo.tell(new PostOrderActor.DecreaseProductStockResponse(message.order_id, this.product.id, true));
+        stockDecrements.count();
+        if (stockDecrements.sampled(log))
+            log.debug("{} received DecreaseProductStock({})", getContext().getSelf().path().name(), message.quantity);
+
+        pendingDecrements.add(message);
+        if (pendingDecrements.size() >= batchMaxSize) {
+            timers.cancel(FLUSH_DECREMENTS);
+            flushDecrements();
         }
+        else if (pendingDecrements.size() == 1) {
+            if (batchWindow.isZero())
+                getContext().getSelf().tell(FLUSH_DECREMENTS);
+            else
+                timers.startSingleTimer(FLUSH_DECREMENTS, batchWindow);
+        }
+
+        return Behaviors.same();
+    }
 
-        return Behaviors.same();        
+    private Behavior<Command> onFlushDecrements(FlushDecrements message) {
+        flushDecrements();
+        return Behaviors.same();
+    }
+
+    // Decides the buffered decrements in arrival order, then replies once per requesting worker
+    // and publishes (and invalidates the JSON for) the stock once per batch
+    private void flushDecrements() {
+        if (pendingDecrements.isEmpty())
+            return;
+        decrementBatches.increment();
+
+        int stockBefore = this.product.stock_quantity;
+        Map<ActorRef<PostOrderActor.Command>, List<PostOrderActor.DecreaseProductStockResponse>> replies = new HashMap<>();
+        for (DecreaseProductStock decrement : pendingDecrements) {
+            Tracing.span(decrement.trace, getContext().getSelf().path().name(), "DecreaseProductStock");
+
+            // Decrease if there is sufficient stock, otherwise fail this order's decrement
+            boolean successful = this.product.stock_quantity >= decrement.quantity;
+            if (successful)
+                this.product.stock_quantity -= decrement.quantity;
+            replies.computeIfAbsent(decrement.replyTo, replyTo -> new ArrayList<>(1))
+                    .add(new PostOrderActor.DecreaseProductStockResponse(decrement.order_id, decrement.item, this.product.id, successful));
+        }
+        pendingDecrements.clear();
+
+        replies.forEach((replyTo, responses) ->
+                replyTo.tell(responses.size() == 1 ? responses.get(0) : new PostOrderActor.DecreaseProductStockResponses(responses)));
+        if (this.product.stock_quantity != stockBefore)
+            stockChanged();
     }
 
     private Behavior<Command> onIncreaseProductStock(IncreaseProductStock message) {
-        System.out.println(getContext().getSelf().path().name() + " received IncreaseProductStock(" + message.quantity + ")");
+        stockIncrements.count();
+        if (stockIncrements.sampled(log))
+            log.debug("{} received IncreaseProductStock({})", getContext().getSelf().path().name(), message.quantity);
         this.product.stock_quantity += message.quantity;
+        stockChanged();
         return Behaviors.same();
     }
+
+    // Invalidates the encoded JSON and publishes the new stock
+    private void stockChanged() {
+        json = null;
+        stockTopic.tell(Topic.publish(new StockChanged(this.product.id, this.product.stock_quantity)));
+    }
 }
@@ -0,0 +1,58 @@
+package com.keval.pods.product;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import akka.serialization.jackson.CborSerializable;
+
+// A product as the JSON body of GET /products/{productId}, encoded by its ProductActor
+// The bytes are never modified after creation, so one instance is shared by every read until the stock changes
+public record ProductJson(Integer product_id, byte[] json, String etag) implements CborSerializable {
+
+    // Reply for a product that doesn't exist
+    public static final ProductJson NOT_FOUND = new ProductJson(null, null, null);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final byte[] SUFFIX = "}".getBytes(StandardCharsets.US_ASCII);
+
+    // Stand-in for a product whose ask failed or missed the batch deadline, so it can't be told whether it exists
+    public static ProductJson missed(Integer productId) {
+        return new ProductJson(productId, null, null);
+    }
+
+    public boolean exists() {
+        return json != null;
+    }
+
+    public boolean isMissed() {
+        return json == null && product_id != null;
+    }
+
+    // Everything up to the stock_quantity value, which is all that ever changes; same fields and order as Jackson writes Product
+    public static byte[] prefixOf(Product product) {
+        ObjectNode node = objectMapper.createObjectNode()
+                .put("id", product.id)
+                .put("name", product.name)
+                .put("description", product.description)
+                .put("price", product.price);
+        try {
+            String fields = objectMapper.writeValueAsString(node);
+            return (fields.substring(0, fields.length() - 1) + ",\"stock_quantity\":").getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode product " + product.id, e);
+        }
+    }
+
+    // The prefix plus the current stock; the ETag follows the content, which only the stock can change
+    public static ProductJson of(Product product, byte[] prefix) {
+        byte[] stock = String.valueOf(product.stock_quantity).getBytes(StandardCharsets.US_ASCII);
+        byte[] json = Arrays.copyOf(prefix, prefix.length + stock.length + SUFFIX.length);
+        System.arraycopy(stock, 0, json, prefix.length, stock.length);
+        System.arraycopy(SUFFIX, 0, json, prefix.length + stock.length, SUFFIX.length);
+        return new ProductJson(product.id, json, product.id + "-" + product.stock_quantity);
+    }
+}
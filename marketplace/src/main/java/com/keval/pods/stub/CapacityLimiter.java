@@ -0,0 +1,51 @@
+package com.keval.pods.stub;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+// Models a server with a fixed number of workers and a bounded accept queue:
+// up to maxInFlight requests are served at once, up to queueSize more wait for a worker, the rest are rejected
+public class CapacityLimiter {
+
+    private static final CompletionStage<Boolean> ADMITTED = CompletableFuture.completedFuture(true);
+    private static final CompletionStage<Boolean> REJECTED = CompletableFuture.completedFuture(false);
+
+    // maxInFlight <= 0 means unlimited
+    private final int maxInFlight;
+    private final int queueSize;
+
+    private int inFlight = 0;
+    private final ArrayDeque<CompletableFuture<Boolean>> waiting = new ArrayDeque<>();
+
+    public CapacityLimiter(int maxInFlight, int queueSize) {
+        this.maxInFlight = maxInFlight;
+        this.queueSize = queueSize;
+    }
+
+    // Completes with true once the request holds a worker, or false if it was rejected
+    public synchronized CompletionStage<Boolean> acquire() {
+        if (maxInFlight <= 0 || inFlight < maxInFlight) {
+            inFlight++;
+            return ADMITTED;
+        }
+        if (waiting.size() >= queueSize)
+            return REJECTED;
+
+        CompletableFuture<Boolean> admission = new CompletableFuture<>();
+        waiting.add(admission);
+        return admission;
+    }
+
+    // Hands the worker to the oldest waiting request, if any
+    public void release() {
+        CompletableFuture<Boolean> next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null)
+                inFlight--;
+        }
+        if (next != null)
+            next.complete(true);
+    }
+}
@@ -0,0 +1,47 @@
+package com.keval.pods.stub;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.typesafe.config.Config;
+
+// Service time distribution of a stubbed endpoint, read from a stub.conf latency block:
+//   distribution = constant | uniform | exponential | lognormal
+//   base  - added to every sample
+//   mean  - mean of the sampled part (median for lognormal)
+//   sigma - shape of the lognormal tail
+//   max   - cap on the total
+public class LatencyModel {
+
+    private final String distribution;
+    private final long baseNanos;
+    private final long meanNanos;
+    private final double sigma;
+    private final long maxNanos;
+
+    public LatencyModel(Config config) {
+        this.distribution = config.getString("distribution");
+        this.baseNanos = config.getDuration("base").toNanos();
+        this.meanNanos = config.getDuration("mean").toNanos();
+        this.sigma = config.getDouble("sigma");
+        this.maxNanos = config.getDuration("max").toNanos();
+
+        if (!distribution.equals("constant") && !distribution.equals("uniform")
+                && !distribution.equals("exponential") && !distribution.equals("lognormal"))
+            throw new IllegalArgumentException("Unknown latency distribution: " + distribution);
+    }
+
+    public Duration sample() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        double sampled = switch (distribution) {
+            case "constant" -> meanNanos;
+            // Uniform over [0, 2 * mean] so the mean is as configured
+            case "uniform" -> random.nextDouble() * 2 * meanNanos;
+            case "exponential" -> -Math.log(1 - random.nextDouble()) * meanNanos;
+            default -> meanNanos * Math.exp(sigma * random.nextGaussian());
+        };
+
+        return Duration.ofNanos(Math.min(maxNanos, baseNanos + (long) sampled));
+    }
+}
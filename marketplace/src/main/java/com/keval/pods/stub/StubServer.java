@@ -0,0 +1,173 @@
+package com.keval.pods.stub;
+
+import static akka.http.javadsl.server.Directives.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import akka.NotUsed;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCode;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.PathMatchers;
+import akka.http.javadsl.server.Route;
+
+// In-memory stand-ins for the Users and Wallets services, implementing only what UsersClient and WalletsClient use:
+//   GET /users/{id}, PUT /users/{id}                      (Users, every user exists)
+//   GET /wallets/{id}, PUT /wallets/{id} {action, amount} (Wallets, every wallet starts with the same balance;
+//                                                          a repeated Idempotency-Key replays the first result)
+// Latency, error rate and capacity of each service come from stub.conf, so the marketplace can be benchmarked
+// without the Spring services and their database in the way
+public class StubServer {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final StubService usersService;
+    private final StubService walletsService;
+
+    private final boolean initialDiscountAvailed;
+    private final int initialBalance;
+    private final Map<Integer, Boolean> discountAvailed = new ConcurrentHashMap<>();
+    private final Map<Integer, Wallet> wallets = new ConcurrentHashMap<>();
+
+    // Keys of transactions applied recently per wallet; WalletsClient retries within one ask timeout, so a few suffice
+    private static final int APPLIED_KEYS_PER_WALLET = 256;
+
+    // A wallet's balance and, like the Wallets service's ledger, the balance after each transaction applied with an
+    // Idempotency-Key, so an attempt the client gave up on (but the stub still applied) isn't applied again on retry
+    private static final class Wallet {
+        volatile int balance;
+        final Map<String, Integer> appliedKeys = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > APPLIED_KEYS_PER_WALLET;
+            }
+        };
+
+        Wallet(int balance) {
+            this.balance = balance;
+        }
+    }
+
+    public StubServer(ActorSystem<?> system, Config config) {
+        this.usersService = new StubService(system, config.getConfig("users"));
+        this.walletsService = new StubService(system, config.getConfig("wallets"));
+        this.initialDiscountAvailed = config.getBoolean("users.discount-availed");
+        this.initialBalance = config.getInt("wallets.initial-balance");
+    }
+
+    public static void main(String[] args) {
+        Config conf = ConfigFactory.load("stub");
+        Config config = conf.getConfig("stub");
+        ActorSystem<NotUsed> system = ActorSystem.create(Behaviors.empty(), "Stub", conf);
+
+        StubServer stubServer = new StubServer(system, config);
+        String interfaceName = config.getString("interface");
+        bind(system, interfaceName, config.getInt("users.port"), stubServer.usersRoutes());
+        bind(system, interfaceName, config.getInt("wallets.port"), stubServer.walletsRoutes());
+    }
+
+    private static void bind(ActorSystem<?> system, String interfaceName, int port, Route route) {
+        Http.get(system).newServerAt(interfaceName, port).bind(route).whenComplete((binding, exception) -> {
+            if (binding != null) {
+                system.log().info("Stub online at http://{}:{}/", binding.localAddress().getHostString(), binding.localAddress().getPort());
+            } else {
+                system.log().error("Failed to bind stub endpoint, terminating system", exception);
+                system.terminate();
+            }
+        });
+    }
+
+    public Route usersRoutes() {
+        return pathPrefix("users", () -> path(PathMatchers.integerSegment(), userId -> concat(
+                // GET /users/{userId}
+                get(() -> completeWithFuture(usersService.serve(() -> json(StatusCodes.OK, user(userId))))),
+                // PUT /users/{userId}
+                put(() -> entity(Jackson.unmarshaller(JsonNode.class), body -> completeWithFuture(usersService.serve(() -> {
+                    if (!body.hasNonNull("discount_availed"))
+                        return HttpResponse.create().withStatus(StatusCodes.BAD_REQUEST);
+                    discountAvailed.put(userId, body.get("discount_availed").asBoolean());
+                    return json(StatusCodes.ACCEPTED, user(userId));
+                })))))));
+    }
+
+    public Route walletsRoutes() {
+        return pathPrefix("wallets", () -> path(PathMatchers.integerSegment(), userId -> concat(
+                // GET /wallets/{userId}
+                get(() -> completeWithFuture(walletsService.serve(() -> {
+                    Wallet wallet = wallets.get(userId);
+                    return json(StatusCodes.OK, wallet(userId, wallet == null ? initialBalance : wallet.balance));
+                }))),
+                // PUT /wallets/{userId}
+                put(() -> optionalHeaderValueByName("Idempotency-Key", idempotencyKey ->
+                        entity(Jackson.unmarshaller(JsonNode.class), body -> completeWithFuture(walletsService.serve(() ->
+                                updateWallet(userId, idempotencyKey, body)))))))));
+    }
+
+    private HttpResponse updateWallet(Integer userId, Optional<String> idempotencyKey, JsonNode body) {
+        String action = body.path("action").asText();
+        int amount = body.path("amount").asInt(-1);
+        if (amount < 0 || (!action.equals("debit") && !action.equals("credit")))
+            return HttpResponse.create().withStatus(StatusCodes.BAD_REQUEST);
+
+        // Applied atomically per wallet; a debit that would overdraw leaves the balance untouched, and a transaction
+        // already applied under the same key only reports the balance it left
+        int[] result = {0, 0};
+        wallets.compute(userId, (id, current) -> {
+            Wallet wallet = current == null ? new Wallet(initialBalance) : current;
+            Integer replayed = idempotencyKey.map(wallet.appliedKeys::get).orElse(null);
+            if (replayed != null) {
+                result[0] = 1;
+                result[1] = replayed;
+                return wallet;
+            }
+
+            int after = action.equals("debit") ? wallet.balance - amount : wallet.balance + amount;
+            if (after >= 0) {
+                wallet.balance = after;
+                idempotencyKey.ifPresent(key -> wallet.appliedKeys.put(key, after));
+                result[0] = 1;
+                result[1] = after;
+            }
+            return wallet;
+        });
+
+        if (result[0] == 0)
+            return HttpResponse.create().withStatus(StatusCodes.BAD_REQUEST);
+        return json(StatusCodes.OK, wallet(userId, result[1]));
+    }
+
+    private ObjectNode user(Integer userId) {
+        return objectMapper.createObjectNode()
+                .put("id", userId)
+                .put("name", "Stub User " + userId)
+                .put("email", "user" + userId + "@stub.local")
+                .put("discount_availed", discountAvailed.getOrDefault(userId, initialDiscountAvailed));
+    }
+
+    private ObjectNode wallet(Integer userId, int balance) {
+        return objectMapper.createObjectNode()
+                .put("user_id", userId)
+                .put("balance", balance);
+    }
+
+    private static HttpResponse json(StatusCode status, ObjectNode body) {
+        return HttpResponse.create()
+                .withStatus(status)
+                .withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON, body.toString()));
+    }
+}
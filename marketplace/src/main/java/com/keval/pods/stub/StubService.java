@@ -0,0 +1,49 @@
+package com.keval.pods.stub;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import com.typesafe.config.Config;
+
+import akka.actor.typed.ActorSystem;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.pattern.Patterns;
+
+// Admission, latency and error injection shared by the stubbed endpoints of one service
+public class StubService {
+
+    private final ActorSystem<?> system;
+    private final LatencyModel latency;
+    private final double errorRate;
+    private final CapacityLimiter limiter;
+
+    public StubService(ActorSystem<?> system, Config config) {
+        this.system = system;
+        this.latency = new LatencyModel(config.getConfig("latency"));
+        this.errorRate = config.getDouble("error-rate");
+        this.limiter = new CapacityLimiter(config.getInt("max-in-flight"), config.getInt("queue-size"));
+    }
+
+    // Waits for a worker and the sampled service time, then either fails the request or runs the handler
+    // Errors are injected before the handler runs, so a failed request has no effect and is safe to retry
+    public CompletionStage<HttpResponse> serve(Supplier<HttpResponse> handler) {
+        return limiter.acquire().thenCompose(admitted -> {
+            if (!admitted)
+                return CompletableFuture.completedFuture(HttpResponse.create().withStatus(StatusCodes.SERVICE_UNAVAILABLE));
+
+            return Patterns.after(latency.sample(), system.classicSystem().scheduler(), system.executionContext(), () -> {
+                try {
+                    if (ThreadLocalRandom.current().nextDouble() < errorRate)
+                        return CompletableFuture.completedFuture(HttpResponse.create().withStatus(StatusCodes.INTERNAL_SERVER_ERROR));
+                    return CompletableFuture.completedFuture(handler.get());
+                }
+                finally {
+                    limiter.release();
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,20 @@
+package com.keval.pods.trace;
+
+import java.util.List;
+import java.util.Map;
+
+// Timing breakdown of one sampled order placement: saga stage durations in microseconds, in stage order,
+// and the spans recorded on this node by the entities that handled the order
+public record OrderTrace(
+        String trace_id,
+        Integer order_id,
+        String outcome,
+        long started_at_ms,
+        long total_us,
+        Map<String, Long> stages_us,
+        List<Span> spans) {
+
+    OrderTrace withSpans(List<Span> spans) {
+        return new OrderTrace(trace_id, order_id, outcome, started_at_ms, total_us, stages_us, spans);
+    }
+}
@@ -0,0 +1,4 @@
+package com.keval.pods.trace;
+
+// One command handled by an actor for a sampled order, at_us being the wall-clock time in microseconds
+public record Span(String actor, String command, long at_us) {}
@@ -0,0 +1,12 @@
+package com.keval.pods.trace;
+
+// Trace identity carried in saga commands, so every actor handling a sampled order can record what it did
+// Unsampled orders all share NONE, which costs nothing beyond a reference per message
+public record TraceContext(long traceId, boolean sampled) {
+
+    public static final TraceContext NONE = new TraceContext(0L, false);
+
+    public String traceIdHex() {
+        return Long.toHexString(traceId);
+    }
+}
@@ -0,0 +1,87 @@
+package com.keval.pods.trace;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+// Node-local sampling decisions and ring buffers of recent order traces and entity spans
+// Only sampled orders ever reach the buffers, so the locking there stays off the common path
+public final class Tracing {
+
+    private Tracing() {}
+
+    private static final Config config = ConfigFactory.load();
+    private static final double sampleRate = config.getDouble("marketplace-app.tracing.sample-rate");
+    private static final int bufferSize = config.getInt("marketplace-app.tracing.buffer-size");
+
+    private record SpanEntry(long traceId, Span span) {}
+
+    private static final OrderTrace[] orderTraces = new OrderTrace[bufferSize];
+    private static long orderTracesWritten = 0;
+    // Entities handle several commands per order, so spans get a larger buffer
+    private static final SpanEntry[] spans = new SpanEntry[bufferSize * 8];
+    private static long spansWritten = 0;
+
+    // Starts a trace for a new order, sampled at marketplace-app.tracing.sample-rate
+    public static TraceContext start() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (sampleRate <= 0 || random.nextDouble() >= sampleRate)
+            return TraceContext.NONE;
+        return new TraceContext(random.nextLong() & Long.MAX_VALUE, true);
+    }
+
+    public static long nowMicros() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    }
+
+    public static void record(OrderTrace orderTrace) {
+        synchronized (orderTraces) {
+            orderTraces[(int) (orderTracesWritten++ % orderTraces.length)] = orderTrace;
+        }
+    }
+
+    // Records that an actor handled a command for a sampled order; no-op for unsampled ones
+    public static void span(TraceContext trace, String actor, String command) {
+        if (!trace.sampled())
+            return;
+        SpanEntry entry = new SpanEntry(trace.traceId(), new Span(actor, command, nowMicros()));
+        synchronized (spans) {
+            spans[(int) (spansWritten++ % spans.length)] = entry;
+        }
+    }
+
+    // Most recent order traces first, optionally only those of one order, with the spans this node has for them
+    public static List<OrderTrace> recentOrders(Integer orderId, int limit) {
+        List<OrderTrace> result = new ArrayList<>();
+        synchronized (orderTraces) {
+            for (long i = orderTracesWritten - 1; i >= 0 && i >= orderTracesWritten - orderTraces.length && result.size() < limit; i--) {
+                OrderTrace orderTrace = orderTraces[(int) (i % orderTraces.length)];
+                if (orderId == null || orderId.equals(orderTrace.order_id()))
+                    result.add(orderTrace);
+            }
+        }
+
+        List<OrderTrace> withSpans = new ArrayList<>(result.size());
+        for (OrderTrace orderTrace : result)
+            withSpans.add(orderTrace.withSpans(spansOf(Long.parseUnsignedLong(orderTrace.trace_id(), 16))));
+        return withSpans;
+    }
+
+    // Spans of one trace in the order they were recorded
+    public static List<Span> spansOf(long traceId) {
+        List<Span> result = new ArrayList<>();
+        synchronized (spans) {
+            for (long i = Math.max(0, spansWritten - spans.length); i < spansWritten; i++) {
+                SpanEntry entry = spans[(int) (i % spans.length)];
+                if (entry.traceId() == traceId)
+                    result.add(entry.span());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,177 @@
+package com.keval.pods.users.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.keval.pods.users.event.UserChangedEvent;
+import com.keval.pods.users.model.User;
+
+/**
+ * Bounded in-process cache in front of UserRepository
+ * <p>Lookups and writes never take a lock. Entries expire after ttl, and once max-size is exceeded a single
+ * thread sweeps the cache, dropping expired entries and then the least recently used ones down to 90% of
+ * max-size, so eviction is approximately LRU and amortised over many puts.
+ * Every UserChangedEvent invalidates the affected entry, so a cached user is never older than the
+ * last write made through this service.</p>
+ */
+@Component
+public class UserCache {
+
+  /** Detached copy of a user together with its ETag */
+  public record Entry(User user, String etag, long expiresAtNanos) {}
+
+  // Entry plus its last access time, which is only used to pick eviction victims
+  private static final class Node {
+    final Entry entry;
+    volatile long lastAccessNanos;
+
+    Node(Entry entry, long nowNanos) {
+      this.entry = entry;
+      this.lastAccessNanos = nowNanos;
+    }
+  }
+
+  private record Victim(Integer userId, Node node, long lastAccessNanos) {}
+
+  private final int maxSize;
+  private final long ttlNanos;
+
+  private final ConcurrentHashMap<Integer, Node> entries = new ConcurrentHashMap<>();
+
+  // Held by the one thread sweeping an oversized cache; others skip the sweep instead of waiting for it
+  private final ReentrantLock evicting = new ReentrantLock();
+
+  // Bumped on every invalidation, lets a lookup that raced with a write skip caching its stale result
+  private final AtomicLong generation = new AtomicLong();
+
+  public UserCache(@Value("${pods.users.cache.max-size}") int maxSize, @Value("${pods.users.cache.ttl}") Duration ttl) {
+    this.maxSize = maxSize;
+    this.ttlNanos = ttl.toNanos();
+  }
+
+  /**
+   * Cached entry for userId
+   * 
+   * @return null if not cached or expired
+   */
+  public Entry get(Integer userId) {
+    Node node = entries.get(userId);
+    if (node == null) {
+      return null;
+    }
+    long now = System.nanoTime();
+    if (node.entry.expiresAtNanos() - now < 0) {
+      entries.remove(userId, node);
+      return null;
+    }
+    node.lastAccessNanos = now;
+    return node.entry;
+  }
+
+  /** Token to pass to put() after reading a user from the repository on a cache miss */
+  public long missToken() {
+    return generation.get();
+  }
+
+  /**
+   * Caches a copy of user loaded from the repository
+   * <p>If an invalidation happened since missToken() was taken, the user may be stale and is not cached.</p>
+   * 
+   * @return the entry describing user, cached or not
+   */
+  public Entry put(User user, long missToken) {
+    long now = System.nanoTime();
+    Entry entry = new Entry(copyOf(user), etagOf(user), now + ttlNanos);
+    if (missToken != generation.get() || maxSize <= 0) {
+      return entry;
+    }
+    Node node = new Node(entry, now);
+    entries.put(user.getId(), node);
+    // An invalidation between the check above and the put bumped the generation before removing; undo the put
+    if (missToken != generation.get()) {
+      entries.remove(user.getId(), node);
+    }
+    else if (entries.size() > maxSize) {
+      evict();
+    }
+    return entry;
+  }
+
+  public void invalidate(Integer userId) {
+    generation.incrementAndGet();
+    entries.remove(userId);
+  }
+
+  public void clear() {
+    generation.incrementAndGet();
+    entries.clear();
+  }
+
+  private void evict() {
+    if (!evicting.tryLock()) {
+      return;
+    }
+    try {
+      long now = System.nanoTime();
+      List<Victim> live = new ArrayList<>(entries.size());
+      for (Map.Entry<Integer, Node> e : entries.entrySet()) {
+        Node node = e.getValue();
+        if (node.entry.expiresAtNanos() - now < 0) {
+          entries.remove(e.getKey(), node);
+        }
+        else {
+          live.add(new Victim(e.getKey(), node, node.lastAccessNanos));
+        }
+      }
+      if (live.size() <= maxSize) {
+        return;
+      }
+      // Sort on a snapshot of the access times, lookups keep updating them meanwhile
+      live.sort(Comparator.comparingLong(Victim::lastAccessNanos));
+      int excess = live.size() - maxSize * 9 / 10;
+      for (int i = 0; i < excess; i++) {
+        entries.remove(live.get(i).userId(), live.get(i).node());
+      }
+    }
+    finally {
+      evicting.unlock();
+    }
+  }
+
+  @EventListener
+  public void onUserChanged(UserChangedEvent event) {
+    if (event.type() == UserChangedEvent.Type.CLEARED) {
+      clear();
+    }
+    else {
+      invalidate(event.userId());
+    }
+  }
+
+  /** Strong ETag derived from all user fields */
+  public static String etagOf(User user) {
+    int hash = Objects.hash(user.getId(), user.getName(), user.getEmail(), user.getDiscount_availed());
+    return "\"" + user.getId() + "-" + Integer.toHexString(hash) + "\"";
+  }
+
+  // Cached users are handed out to concurrent requests, so never share the JPA entity itself
+  private static User copyOf(User user) {
+    User copy = new User();
+    copy.setId(user.getId());
+    copy.setName(user.getName());
+    copy.setEmail(user.getEmail());
+    copy.setDiscount_availed(user.getDiscount_availed());
+    return copy;
+  }
+}
@@ -1,13 +1,22 @@
 package com.keval.pods.users.client;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClient;
 
 import lombok.extern.apachecommons.CommonsLog;
 
 @CommonsLog
+@Component
 public class MarketplaceClient {
+  // Shared pooled client, see ClientConfig
+  private final RestClient restClient;
+
+  public MarketplaceClient(RestClient restClient) {
+    this.restClient = restClient;
+  }
+
   /**
    * Cancels all orders place by user
    * <p>Sends DELETE request to "/marketplace/users/{userId}"</p>
@@ -15,8 +24,6 @@ public class MarketplaceClient {
    * @return 200 if atleast one order was cancelled, 404 if no orders were cancelled
    */
   public HttpStatus cancelAllOrdersByUserId(String url, Integer userId) {
-    RestClient restClient = RestClient.create();
-    
     try {
       restClient.delete()
         .uri(url + "/marketplace/users/{userId}", userId)
@@ -41,8 +48,6 @@ public class MarketplaceClient {
    * @return 200 always
    */
   // public HttpStatus cancelAllOrders(String url) {
-  //   RestClient restClient = RestClient.create();
-      
   //   try {
   //     restClient.delete()
   //       .uri(url + "/marketplace")
@@ -1,13 +1,22 @@
 package com.keval.pods.users.client;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClient;
 
 import lombok.extern.apachecommons.CommonsLog;
 
 @CommonsLog
+@Component
 public class WalletsClient {
+  // Shared pooled client, see ClientConfig
+  private final RestClient restClient;
+
+  public WalletsClient(RestClient restClient) {
+    this.restClient = restClient;
+  }
+
   /**
    * Delete user's wallet
    * <p> Sends DELETE request to "/wallets/{userId}" </p>
@@ -15,8 +24,6 @@ public class WalletsClient {
    * @return 200 if wallet deleted, 404 if wallet not found
    */
   public HttpStatus deleteWalletByUserId(String url, Integer userId) {
-    RestClient restClient = RestClient.create();
-    
     try {
       restClient.delete()
         .uri(url + "/wallets/{userId}", userId)
@@ -41,8 +48,6 @@ public class WalletsClient {
    * @return 200 always
    */
   public HttpStatus deleteAllWallets(String url) {
-    RestClient restClient = RestClient.create();
-    
     try {
       restClient.delete()
         .uri(url + "/wallets")
@@ -0,0 +1,41 @@
+package com.keval.pods.users.config;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+@Configuration
+public class ClientConfig {
+
+  /**
+   * RestClient shared by the marketplace and wallets clients
+   * <p>Backed by a single JDK HttpClient, so connections to the other services are pooled and reused.</p>
+   */
+  @Bean
+  public RestClient restClient(@Value("${pods.client.connect-timeout}") Duration connectTimeout,
+      @Value("${pods.client.read-timeout}") Duration readTimeout) {
+    HttpClient httpClient = HttpClient.newBuilder()
+      .connectTimeout(connectTimeout)
+      .build();
+
+    JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+    requestFactory.setReadTimeout(readTimeout);
+
+    return RestClient.builder()
+      .requestFactory(requestFactory)
+      .build();
+  }
+
+  /** Executor for downstream calls issued concurrently, one virtual thread per call */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService fanOutExecutor() {
+    return Executors.newVirtualThreadPerTaskExecutor();
+  }
+}
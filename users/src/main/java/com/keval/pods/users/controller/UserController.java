@@ -1,10 +1,25 @@
 package com.keval.pods.users.controller;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -13,18 +28,37 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.keval.pods.users.cache.UserCache;
 import com.keval.pods.users.client.MarketplaceClient;
 import com.keval.pods.users.client.WalletsClient;
+import com.keval.pods.users.event.UserChangedEvent;
+import com.keval.pods.users.feed.UserChangeFeed;
 import com.keval.pods.users.model.User;
 import com.keval.pods.users.repository.UserRepository;
 
+import lombok.extern.apachecommons.CommonsLog;
+
+@CommonsLog
 @RestController
 public class UserController {
   // Obtain the user repository
   @Autowired
   private UserRepository userRepository;
+
+  // Read cache in front of the user repository, invalidated through UserChangedEvents
+  @Autowired
+  private UserCache userCache;
+  @Autowired
+  private ApplicationEventPublisher eventPublisher;
+
+  // Push feed of the same events for other services
+  @Autowired
+  private UserChangeFeed userChangeFeed;
   
   // Read marketplace and wallets service URLs from configuration files
   @Value("${pods.marketplaceUrl}")
@@ -32,9 +66,24 @@ public class UserController {
   @Value("${pods.walletsUrl}")
   private String walletsUrl;
 
-  // Clients for the marketplace and wallets services
-  private MarketplaceClient marketplaceClient = new MarketplaceClient();
-  private WalletsClient walletsClient = new WalletsClient();
+  // Clients for the marketplace and wallets services, sharing one pooled RestClient
+  @Autowired
+  private MarketplaceClient marketplaceClient;
+  @Autowired
+  private WalletsClient walletsClient;
+
+  // Downstream calls made on behalf of one request run concurrently on this executor
+  @Autowired
+  private ExecutorService fanOutExecutor;
+  // Deadline for all downstream calls of one request
+  @Value("${pods.client.fanout-timeout}")
+  private Duration fanOutTimeout;
+  // Users deleted per transaction by DELETE /users
+  @Value("${pods.users.delete-batch-size}")
+  private int deleteBatchSize;
+  // Maximum number of users looked up or created by one batch request
+  @Value("${pods.users.batch.max-size}")
+  private int batchMaxSize;
 
   /* Endpoint 0: GET /hello
    * Testing endpoint
@@ -68,8 +117,7 @@ public class UserController {
 
     // Check if user with same email exists
     // Return 400 BAD REQUEST if so
-    List<User> foundUsers = userRepository.findByEmail(user.getEmail());
-    if (!foundUsers.isEmpty()) {
+    if (userRepository.existsByEmail(user.getEmail())) {
       return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
     }
 
@@ -78,29 +126,163 @@ public class UserController {
     try {
       user.setDiscount_availed(false);
       User savedUser = userRepository.save(user);
+      eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.CREATED, savedUser.getId(), savedUser));
       return new ResponseEntity<>(savedUser, HttpStatus.CREATED);
     }
 
+    // Return 400 BAD REQUEST if a concurrent request took the email first (unique index)
+    catch (DataIntegrityViolationException e) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
     // Return 500 INTERNAL SERVER ERROR if save fails
     catch (Exception e) {
       return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
     }
   }
 
-  /* Endpoint 2: GET /users/{userId} */
-  @GetMapping(path = "/users/{userId}")
-  public ResponseEntity<User> getUserById(@PathVariable Integer userId) {
-    // Try to find user with userId
-    // Return 200 OK with user JSON if found
+  /* Endpoint c: POST /users/batch
+   * Bulk import, all-or-nothing
+   * Request Body:
+   *  [
+   *    { "id": ..., "name": "...", "email": "..." },
+   *    ...
+   *  ]
+   */
+  @PostMapping(path = "/users/batch", consumes = "application/json")
+  public ResponseEntity<List<User>> createUsers(@RequestBody List<User> users) {
+    // Return 400 BAD REQUEST if the batch is empty or too large
+    if (users.isEmpty() || users.size() > batchMaxSize) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+    // Verify required fields are present and ids and emails are unique within the batch
+    // Return 400 BAD REQUEST if not
+    Set<Integer> ids = new HashSet<>();
+    Set<String> emails = new HashSet<>();
+    for (User user : users) {
+      if (user.getId() == null || user.getName() == null || user.getEmail() == null) {
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+      }
+      if (!ids.add(user.getId()) || !emails.add(user.getEmail())) {
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+      }
+    }
+
+    // Check that no id or email is taken yet, one IN query each
+    // Return 400 BAD REQUEST if any is
+    if (!userRepository.findAllById(ids).isEmpty() || !userRepository.findExistingEmails(emails).isEmpty()) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+    // Try to insert all users in JDBC batches
+    // Return 201 CREATED with saved users JSON if successful
     try {
-      User user = userRepository.findById(userId).orElseThrow();
-      return new ResponseEntity<>(user, HttpStatus.OK);
+      for (User user : users) {
+        user.setDiscount_availed(false);
+      }
+      userRepository.insertAll(users);
+
+      for (User user : users) {
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.CREATED, user.getId(), user));
+      }
+      return new ResponseEntity<>(users, HttpStatus.CREATED);
     }
-    
-    // Return 404 NOT FOUND if user is not found
-    catch (NoSuchElementException e) {
-      return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    // Return 400 BAD REQUEST if a concurrent request took an id or email first
+    catch (DataIntegrityViolationException e) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
     }
+    // Return 500 INTERNAL SERVER ERROR if save fails
+    catch (Exception e) {
+      return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+  }
+
+  /* Endpoint d: GET /users?ids=1,2,3
+   * Returns the users that exist among ids, in the requested order
+   */
+  @GetMapping(path = "/users", params = "ids")
+  public ResponseEntity<List<User>> getUsersByIds(@RequestParam List<Integer> ids) {
+    // Return 400 BAD REQUEST if too many ids are requested
+    if (ids.size() > batchMaxSize) {
+      return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+    // Serve what we can from the cache
+    Map<Integer, User> found = new HashMap<>();
+    List<Integer> missing = new ArrayList<>();
+    for (Integer id : ids) {
+      UserCache.Entry cached = userCache.get(id);
+      if (cached != null) found.put(id, cached.user());
+      else missing.add(id);
+    }
+
+    // Load the rest with a single IN query and cache them
+    if (!missing.isEmpty()) {
+      long missToken = userCache.missToken();
+      for (User user : userRepository.findAllById(missing)) {
+        found.put(user.getId(), userCache.put(user, missToken).user());
+      }
+    }
+
+    // Return 200 OK with the found users JSON
+    List<User> users = new ArrayList<>();
+    for (Integer id : ids) {
+      User user = found.get(id);
+      if (user != null) users.add(user);
+    }
+    return new ResponseEntity<>(users, HttpStatus.OK);
+  }
+
+  /* Endpoint 2: GET /users/{userId}
+   * Supports conditional requests: responses carry an ETag, and a matching If-None-Match gets 304
+   */
+  @GetMapping(path = "/users/{userId}")
+  public ResponseEntity<User> getUserById(@PathVariable Integer userId,
+      @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    // Serve repeat lookups from the cache
+    UserCache.Entry cached = userCache.get(userId);
+
+    // Otherwise try to find user with userId and cache it
+    if (cached == null) {
+      try {
+        long missToken = userCache.missToken();
+        User user = userRepository.findById(userId).orElseThrow();
+        cached = userCache.put(user, missToken);
+      }
+      // Return 404 NOT FOUND if user is not found
+      catch (NoSuchElementException e) {
+        return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+      }
+    }
+
+    // Return 304 NOT MODIFIED if the client already holds this version
+    if (ifNoneMatch != null && matchesAny(ifNoneMatch, cached.etag())) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(cached.etag()).build();
+    }
+
+    // Return 200 OK with user JSON if found
+    return ResponseEntity.ok().eTag(cached.etag()).body(cached.user());
+  }
+
+  // If-None-Match holds "*" or a comma-separated list of ETags, compared weakly as RFC 9110 requires for it
+  private static boolean matchesAny(String ifNoneMatch, String etag) {
+    ETag current = ETag.create(etag);
+    for (ETag candidate : ETag.parse(ifNoneMatch)) {
+      if (candidate.isWildcard() || candidate.compare(current, false)) return true;
+    }
+    return false;
+  }
+
+  /* Endpoint b: GET /users/changes
+   * Server-sent event stream of user creations, updates and deletions
+   * Resumable: pass the last seen event id as Last-Event-ID header (or ?since=)
+   */
+  @GetMapping(path = "/users/changes", produces = "text/event-stream")
+  public SseEmitter streamUserChanges(
+      @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId,
+      @RequestParam(name = "since", required = false) Long since) {
+    return userChangeFeed.subscribe(lastEventId != null ? lastEventId : since);
   }
 
   /* Endpoint a: PUT /users/{userId}
@@ -124,6 +306,7 @@ public class UserController {
       existingUser.setDiscount_availed(newUser.getDiscount_availed());
 
       User savedUser = userRepository.save(existingUser);
+      eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.UPDATED, userId, savedUser));
       return new ResponseEntity<>(savedUser, HttpStatus.ACCEPTED);
     }
     // Return 404 NOT FOUND if user is not found
@@ -145,14 +328,18 @@ public class UserController {
       @SuppressWarnings("unused")
       User user = userRepository.findById(userId).orElseThrow();
 
-      // Cancel user's orders using marketplace service
-      marketplaceClient.cancelAllOrdersByUserId(marketplaceUrl, userId);
+      // Cancel user's orders using marketplace service, then delete user's wallet using wallet service
+      // Not concurrently: cancelling refunds the wallet, and a refund landing after the delete would recreate it
+      HttpStatus cancelOrders = callDownstream(() -> marketplaceClient.cancelAllOrdersByUserId(marketplaceUrl, userId)).join();
+      HttpStatus deleteWallet = callDownstream(() -> walletsClient.deleteWalletByUserId(walletsUrl, userId)).join();
 
-      // Delete user's wallet using wallet service
-      walletsClient.deleteWalletByUserId(walletsUrl, userId);
+      if (cancelOrders.is5xxServerError() || deleteWallet.is5xxServerError()) {
+        log.warn("Deleting user " + userId + ": cancel orders " + cancelOrders + ", delete wallet " + deleteWallet);
+      }
 
       // Delete user from JPA
       userRepository.deleteById(userId);
+      eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.DELETED, userId, null));
       return new ResponseEntity<>(HttpStatus.OK);
     }
     // Return 404 NOT FOUND if user is not found
@@ -168,11 +355,40 @@ public class UserController {
     // REMOVED: Reset marketplace, i.e., cancel all orders
     // marketplaceClient.cancelAllOrders(marketplaceUrl);
     
-    // Remove all wallets
-    walletsClient.deleteAllWallets(walletsUrl);
+    // Remove all wallets, concurrently with deleting the users
+    CompletableFuture<HttpStatus> deleteWallets = callDownstream(() -> walletsClient.deleteAllWallets(walletsUrl));
+
+    // Delete all users from JPA, in parallel batches of one transaction each
+    List<Integer> userIds = userRepository.findAllIds();
+    List<CompletableFuture<Void>> deleteBatches = new ArrayList<>();
+    for (int from = 0; from < userIds.size(); from += deleteBatchSize) {
+      List<Integer> batch = userIds.subList(from, Math.min(from + deleteBatchSize, userIds.size()));
+      deleteBatches.add(CompletableFuture.runAsync(() -> userRepository.deleteAllByIdInBatch(batch), fanOutExecutor));
+    }
+    CompletableFuture.allOf(deleteBatches.toArray(new CompletableFuture[0])).join();
 
-    // Delete all users from JPA
-    userRepository.deleteAll();
+    if (deleteWallets.join().is5xxServerError()) {
+      log.warn("Deleting all users: delete wallets " + deleteWallets.join());
+    }
+
+    eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.CLEARED, null, null));
     return new ResponseEntity<>(HttpStatus.OK);
   }
+
+  // Runs a downstream call on the fan-out executor, completing with 504 GATEWAY TIMEOUT if it misses the deadline
+  // A call that misses it is interrupted, which aborts its HTTP exchange instead of leaving it holding a thread
+  private CompletableFuture<HttpStatus> callDownstream(Supplier<HttpStatus> call) {
+    CompletableFuture<HttpStatus> result = new CompletableFuture<>();
+    Future<?> task = fanOutExecutor.submit(() -> {
+      try {
+        result.complete(call.get());
+      }
+      catch (RuntimeException e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result
+      .completeOnTimeout(HttpStatus.GATEWAY_TIMEOUT, fanOutTimeout.toMillis(), TimeUnit.MILLISECONDS)
+      .whenComplete((status, e) -> task.cancel(true));
+  }
 }
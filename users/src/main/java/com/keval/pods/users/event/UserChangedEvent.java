@@ -0,0 +1,12 @@
+package com.keval.pods.users.event;
+
+import com.keval.pods.users.model.User;
+
+/**
+ * Published by UserController whenever a user is created, updated or deleted
+ * <p>CLEARED is published once for DELETE /users instead of one DELETED per user.
+ * user is null for DELETED and CLEARED.</p>
+ */
+public record UserChangedEvent(Type type, Integer userId, User user) {
+  public enum Type { CREATED, UPDATED, DELETED, CLEARED }
+}
@@ -0,0 +1,181 @@
+package com.keval.pods.users.feed;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.keval.pods.users.event.UserChangedEvent;
+import com.keval.pods.users.model.User;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.apachecommons.CommonsLog;
+
+/**
+ * Server-sent event feed of user changes
+ * <p>Every UserChangedEvent gets the next sequence number and is pushed to all subscribers.
+ * The most recent changes are kept in a ring buffer, so a subscriber that reconnects with the last
+ * sequence number it saw (Last-Event-ID) resumes without gaps. If the changes it missed are no longer
+ * buffered it receives a "reset" event and has to re-read the users it cares about.</p>
+ * <p>Each subscriber has its own bounded queue, drained by its own sender, so a slow client only delays
+ * itself. A subscriber whose queue fills up is disconnected and catches up by resuming.</p>
+ */
+@CommonsLog
+@Component
+public class UserChangeFeed {
+
+  /** One entry of the feed, serialized as the data of an SSE event whose id is seq */
+  public record Change(long seq, UserChangedEvent.Type type, Integer user_id, User user) {}
+
+  private final Change[] buffer;
+  private final long emitterTimeoutMs;
+  private final int subscriberQueueSize;
+  private long lastSeq = 0;
+
+  private final List<Subscriber> subscribers = new ArrayList<>();
+
+  // Sends block on the client's socket, so every draining subscriber gets a (virtual) thread of its own
+  private final ExecutorService senders = Executors.newThreadPerTaskExecutor(
+      Thread.ofVirtual().name("user-change-feed-", 0).factory());
+
+  public UserChangeFeed(@Value("${pods.users.changes.buffer-size}") int bufferSize,
+      @Value("${pods.users.changes.emitter-timeout-ms}") long emitterTimeoutMs,
+      @Value("${pods.users.changes.subscriber-queue-size}") int subscriberQueueSize) {
+    this.buffer = new Change[bufferSize];
+    this.emitterTimeoutMs = emitterTimeoutMs;
+    this.subscriberQueueSize = subscriberQueueSize;
+  }
+
+  @EventListener
+  public void onUserChanged(UserChangedEvent event) {
+    List<Subscriber> laggards = new ArrayList<>();
+    synchronized (this) {
+      Change change = new Change(++lastSeq, event.type(), event.userId(), event.user());
+      buffer[(int) (change.seq() % buffer.length)] = change;
+
+      for (Iterator<Subscriber> it = subscribers.iterator(); it.hasNext();) {
+        Subscriber subscriber = it.next();
+        if (!subscriber.offer(change)) {
+          it.remove();
+          laggards.add(subscriber);
+        }
+      }
+    }
+
+    // Completed outside the lock, as completion calls back into unsubscribe()
+    for (Subscriber laggard : laggards) {
+      log.debug("Disconnecting lagging change feed subscriber");
+      laggard.emitter.complete();
+    }
+  }
+
+  /**
+   * Subscribes to the feed
+   * 
+   * @param since last sequence number seen by the subscriber, null to only receive new changes
+   */
+  public synchronized SseEmitter subscribe(Long since) {
+    SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+    emitter.onCompletion(() -> unsubscribe(emitter));
+    emitter.onTimeout(() -> unsubscribe(emitter));
+    emitter.onError(e -> unsubscribe(emitter));
+
+    // Room for a full replay, plus the usual headroom for new changes
+    int capacity = subscriberQueueSize;
+    if (since != null && since <= lastSeq) {
+      capacity += (int) Math.min(buffer.length, lastSeq - since);
+    }
+    Subscriber subscriber = new Subscriber(emitter, capacity);
+
+    if (since != null) {
+      long oldestBuffered = Math.max(1, lastSeq - buffer.length + 1);
+
+      // Missed changes are gone (or the sequence is from before a restart), the subscriber must resync
+      if (since > lastSeq || since + 1 < oldestBuffered) {
+        subscriber.offer(new Change(lastSeq, null, null, null));
+      }
+      // Otherwise replay what was missed, queued ahead of any change published after this call
+      else {
+        for (long seq = since + 1; seq <= lastSeq; seq++) {
+          subscriber.offer(buffer[(int) (seq % buffer.length)]);
+        }
+      }
+    }
+
+    subscribers.add(subscriber);
+    return emitter;
+  }
+
+  private synchronized void unsubscribe(SseEmitter emitter) {
+    subscribers.removeIf(subscriber -> subscriber.emitter == emitter);
+  }
+
+  // A subscriber's pending changes; at most one sender drains them at a time, which keeps them in order
+  private final class Subscriber {
+    final SseEmitter emitter;
+    final ArrayBlockingQueue<Change> queue;
+    final AtomicBoolean draining = new AtomicBoolean();
+
+    Subscriber(SseEmitter emitter, int capacity) {
+      this.emitter = emitter;
+      this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /** @return false if the subscriber has fallen too far behind to take the change */
+    boolean offer(Change change) {
+      if (!queue.offer(change)) {
+        return false;
+      }
+      if (draining.compareAndSet(false, true)) {
+        senders.execute(this::drain);
+      }
+      return true;
+    }
+
+    private void drain() {
+      do {
+        Change change;
+        while ((change = queue.poll()) != null) {
+          if (!send(change)) {
+            queue.clear();
+            return;
+          }
+        }
+        draining.set(false);
+        // A change offered after the last poll but before the flag was cleared found the drain still running
+      } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    // A change without a type is the reset marker
+    private boolean send(Change change) {
+      try {
+        emitter.send(SseEmitter.event()
+          .id(String.valueOf(change.seq()))
+          .name(change.type() == null ? "reset" : change.type().name().toLowerCase())
+          .data(change, MediaType.APPLICATION_JSON));
+        return true;
+      }
+      catch (IOException | IllegalStateException e) {
+        // Subscriber went away, completing the emitter unsubscribes it
+        emitter.completeWithError(e);
+        return false;
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    log.debug("Closing user change feed");
+    senders.shutdownNow();
+  }
+}
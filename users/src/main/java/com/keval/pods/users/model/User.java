@@ -2,13 +2,15 @@ package com.keval.pods.users.model;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.Data;
 
 @Entity   // Marks as Persistent Object for JPA
 @Data     // Adds getters and setters for attributes
 // Manually set table name since User (default) is reserved by H2
-@Table(name = "Users")
+// Unique index on email backs the email uniqueness check
+@Table(name = "Users", indexes = @Index(name = "idx_users_email", columnList = "email", unique = true))
 public class User {
   @Id
   private Integer id;
@@ -0,0 +1,16 @@
+package com.keval.pods.users.repository;
+
+import java.util.List;
+
+import com.keval.pods.users.model.User;
+
+// Bulk operations that the derived JpaRepository methods cannot do efficiently
+public interface UserBatchRepository {
+
+  /**
+   * Inserts new users in JDBC batches
+   * <p>Unlike saveAll(), does not issue a SELECT per user to decide between insert and merge,
+   * so callers must have checked that none of the ids exist.</p>
+   */
+  void insertAll(List<User> users);
+}
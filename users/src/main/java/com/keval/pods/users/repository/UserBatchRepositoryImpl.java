@@ -0,0 +1,36 @@
+package com.keval.pods.users.repository;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.keval.pods.users.model.User;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+// Picked up by Spring Data as the implementation of the UserBatchRepository fragment of UserRepository
+public class UserBatchRepositoryImpl implements UserBatchRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  // Matches hibernate.jdbc.batch_size, so every flush sends full JDBC batches
+  @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+  private int batchSize;
+
+  @Override
+  @Transactional
+  public void insertAll(List<User> users) {
+    for (int i = 0; i < users.size(); i++) {
+      entityManager.persist(users.get(i));
+
+      // Flush and detach each batch so the persistence context stays small for large imports
+      if ((i + 1) % batchSize == 0) {
+        entityManager.flush();
+        entityManager.clear();
+      }
+    }
+  }
+}
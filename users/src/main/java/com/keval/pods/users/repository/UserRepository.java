@@ -1,18 +1,28 @@
 package com.keval.pods.users.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import com.keval.pods.users.model.User;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Integer> {
+public interface UserRepository extends JpaRepository<User, Integer>, UserBatchRepository {
 
-  // Query users by email
-  List<User> findByEmail(String email);
+  // Check if a user with email exists, a probe of the unique email index
+  boolean existsByEmail(String email);
+
+  // Query which of the emails are already taken, as a single IN query
+  @Query("SELECT u.email FROM User u WHERE u.email IN :emails")
+  List<String> findExistingEmails(Collection<String> emails);
+
+  // Query ids of all users
+  @Query("SELECT u.id FROM User u")
+  List<Integer> findAllIds();
 
   // Query user by id
   Optional<User> findById(Integer id);
@@ -2,8 +2,10 @@ package com.keval.pods.wallets;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling // Periodic wallet ledger compaction
 public class WalletsApplication {
 
 	public static void main(String[] args) {
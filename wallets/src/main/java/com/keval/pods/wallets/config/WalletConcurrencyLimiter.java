@@ -0,0 +1,102 @@
+package com.keval.pods.wallets.config;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.keval.pods.wallets.repository.WalletPartitions;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Caps the number of wallet requests that may hold a connection of each partition at once
+// With virtual threads enabled there is no Tomcat thread limit, so without this cap every in-flight
+// request would queue inside the Hikari pools and time out there; instead excess requests wait here
+// for a bounded time and are rejected with 503 if no permit of their partition frees up.
+// Each partition has its own permits, so a hot partition can't starve requests for the others.
+// Platform-thread mode is already bounded by Tomcat's thread pool and runs without this filter
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class WalletConcurrencyLimiter extends OncePerRequestFilter {
+
+    private static final String WALLET_PATH = "/wallets/";
+
+    private final WalletPartitions walletPartitions;
+    private final Semaphore[] permits;
+    private final long queueTimeoutMs;
+
+    public WalletConcurrencyLimiter(
+        @Value("${pods.wallets.max-concurrent-requests-per-partition}") int maxConcurrentRequests,
+        @Value("${pods.wallets.limiter-queue-timeout-ms}") long queueTimeoutMs,
+        @Value("${pods.wallets.partition-pool-size}") int partitionPoolSize,
+        WalletPartitions walletPartitions) {
+
+        // 0 means one permit per pooled connection of the partition
+        int limit = maxConcurrentRequests > 0 ? maxConcurrentRequests : partitionPoolSize;
+
+        this.walletPartitions = walletPartitions;
+        this.permits = new Semaphore[walletPartitions.count()];
+        for (int partition = 0; partition < permits.length; partition++) {
+            permits[partition] = new Semaphore(limit, true);
+        }
+        this.queueTimeoutMs = queueTimeoutMs;
+    }
+
+    // Only requests for one wallet are limited; DELETE /wallets is an administrative sweep over all partitions
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return partitionOf(request) < 0;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+
+        Semaphore partitionPermits = permits[partitionOf(request)];
+        boolean acquired;
+        try {
+            acquired = partitionPermits.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        //Return 503 SERVICE UNAVAILABLE if no connection of the partition is expected to free up in time
+        if (!acquired) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "1");
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        }
+        finally {
+            partitionPermits.release();
+        }
+    }
+
+    // Partition of the wallet in a /wallets/{user_id} request, -1 for any other request (or an invalid id,
+    // which the controller rejects); filters run before handler mapping, so the id is read from the URI
+    private int partitionOf(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        if (!uri.startsWith(WALLET_PATH)) {
+            return -1;
+        }
+        try {
+            return walletPartitions.partitionOf(Integer.valueOf(uri.substring(WALLET_PATH.length())));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
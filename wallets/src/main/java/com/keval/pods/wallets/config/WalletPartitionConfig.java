@@ -0,0 +1,75 @@
+package com.keval.pods.wallets.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.keval.pods.wallets.repository.PartitionedDataSource;
+import com.keval.pods.wallets.repository.WalletPartitions;
+import com.zaxxer.hikari.HikariDataSource;
+
+// Wallets are hash-partitioned by user_id across several embedded H2 instances,
+// each with its own connection pool, so writes to different wallets do not share a lock manager
+@Configuration
+public class WalletPartitionConfig implements WebMvcConfigurer {
+
+    @Value("${pods.wallets.partitions}")
+    private int partitions;
+    @Value("${pods.wallets.partition-url}")
+    private String partitionUrl;
+    @Value("${pods.wallets.partition-pool-size}")
+    private int partitionPoolSize;
+    @Value("${spring.datasource.username}")
+    private String username;
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Bean
+    public WalletPartitions walletPartitions() {
+        // 0 partitions means one per core
+        int count = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+        return new WalletPartitions(count);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(WalletPartitions walletPartitions) {
+        ResourceDatabasePopulator schema = new ResourceDatabasePopulator(new ClassPathResource("wallets-schema.sql"));
+
+        Map<Object, Object> partitionDataSources = new HashMap<>();
+        for (int partition = 0; partition < walletPartitions.count(); partition++) {
+            HikariDataSource partitionDataSource = new HikariDataSource();
+            partitionDataSource.setPoolName("wallets-partition-" + partition);
+            partitionDataSource.setJdbcUrl(String.format(partitionUrl, partition));
+            partitionDataSource.setUsername(username);
+            partitionDataSource.setPassword(password);
+            partitionDataSource.setMaximumPoolSize(partitionPoolSize);
+
+            // Every partition gets the same schema
+            DatabasePopulatorUtils.execute(schema, partitionDataSource);
+            partitionDataSources.put(partition, partitionDataSource);
+        }
+
+        PartitionedDataSource dataSource = new PartitionedDataSource(walletPartitions);
+        dataSource.setTargetDataSources(partitionDataSources);
+        dataSource.setDefaultTargetDataSource(partitionDataSources.get(0));
+        return dataSource;
+    }
+
+    // Route /wallets/{user_id} requests to the owning partition before the handler (and its transaction) starts
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new WalletPartitionInterceptor(walletPartitions())).addPathPatterns("/wallets/*");
+    }
+}
@@ -0,0 +1,47 @@
+package com.keval.pods.wallets.config;
+
+import java.util.Map;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.keval.pods.wallets.repository.WalletPartitions;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Opens a partition route for the user_id path variable of the request and closes it on completion
+public class WalletPartitionInterceptor implements HandlerInterceptor {
+
+    private static final String ROUTE_ATTRIBUTE = WalletPartitionInterceptor.class.getName() + ".route";
+
+    private final WalletPartitions walletPartitions;
+
+    public WalletPartitionInterceptor(WalletPartitions walletPartitions) {
+        this.walletPartitions = walletPartitions;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> pathVariables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+
+        if (pathVariables != null && pathVariables.containsKey("user_id")) {
+            try {
+                Integer user_id = Integer.valueOf(pathVariables.get("user_id"));
+                request.setAttribute(ROUTE_ATTRIBUTE, walletPartitions.route(user_id));
+            }
+            // Invalid ids are rejected by the controller's argument binding
+            catch (NumberFormatException e) {}
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object route = request.getAttribute(ROUTE_ATTRIBUTE);
+        if (route != null) {
+            ((WalletPartitions.Route) route).close();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.keval.pods.wallets.controller;
 
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -12,10 +14,14 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
 import com.keval.pods.wallets.model.Wallet;
+import com.keval.pods.wallets.model.WalletLedgerEntry;
+import com.keval.pods.wallets.repository.WalletLedgerRepository;
+import com.keval.pods.wallets.repository.WalletPartitions;
 import com.keval.pods.wallets.repository.WalletRepository;
 
 import jakarta.transaction.Transactional;
@@ -26,6 +32,13 @@ public class WalletController {
     @Autowired
     private WalletRepository walletRepository;
 
+    @Autowired
+    private WalletLedgerRepository walletLedgerRepository;
+
+    //Requests for a single wallet are routed to its partition by WalletPartitionInterceptor
+    @Autowired
+    private WalletPartitions walletPartitions;
+
     //GET /wallets/{userId}     
     //Get the balance of the user
     @GetMapping(path = "/wallets/{user_id}")
@@ -66,10 +79,12 @@ public class WalletController {
     // Update the wallet of the user
     //return the updated balance and status code 200 
     //Explicitely mention -H "Content-Type: application/json" in the curl command
+    //Optional header "Idempotency-Key": a retried request with the same key is applied only once
     @PutMapping(path = "/wallets/{user_id}", consumes = "application/json")
     @Transactional
     public ResponseEntity<Map<String, Object>> updateWallet(
         @PathVariable Integer user_id,
+        @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey,
         @RequestBody WalletUpdateRequest walletUpdateRequest){
 
         // if wallet does not exist, create a new wallet with balance 0
@@ -83,6 +98,20 @@ public class WalletController {
             walletRepository.getBalance(user_id);
         }
 
+        // Lock the wallet row, so that duplicates of this request wait for it to commit
+        walletRepository.findByIdForUpdate(user_id);
+
+        // If this transaction was already applied, replay the balance recorded for it
+        if (idempotencyKey != null) {
+            Optional<WalletLedgerEntry> appliedEntry = walletLedgerRepository.findByIdempotencyKey(user_id, idempotencyKey);
+            if (appliedEntry.isPresent()) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("user_id", user_id);
+                response.put("balance", appliedEntry.get().getBalance_after());
+                return ResponseEntity.ok(response); //return status code 200 and recorded balance json
+            }
+        }
+
         // if wallet exists, update the wallet
     
         //If action is credit, add the amount to the balance
@@ -111,6 +140,16 @@ public class WalletController {
 
         Integer updatedBalance = walletRepository.getBalance(user_id);
 
+        // Append the applied transaction to the ledger
+        WalletLedgerEntry ledgerEntry = new WalletLedgerEntry();
+        ledgerEntry.setUser_id(user_id);
+        ledgerEntry.setIdempotency_key(idempotencyKey);
+        ledgerEntry.setAction(walletUpdateRequest.getAction());
+        ledgerEntry.setAmount(amount);
+        ledgerEntry.setBalance_after(updatedBalance);
+        ledgerEntry.setCreated_at(Instant.now());
+        walletLedgerRepository.save(ledgerEntry);
+
         Map<String, Object> response = new HashMap<>();
         response.put("user_id", user_id);
         response.put("balance", updatedBalance);
@@ -125,6 +164,7 @@ public class WalletController {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Wallet not found");
         }
         walletRepository.deleteWallet(user_id);
+        walletLedgerRepository.deleteByUserId(user_id);
         return ResponseEntity.ok().build(); //return status code 200  
     }
 
@@ -132,7 +172,13 @@ public class WalletController {
     //Delete all wallets 
     @DeleteMapping(path = "/wallets")
     public ResponseEntity<Void> deleteAllWallets(){
-        walletRepository.deleteAll();
+        //Wallets are spread over all partitions
+        for (int partition = 0; partition < walletPartitions.count(); partition++) {
+            try (WalletPartitions.Route route = walletPartitions.use(partition)) {
+                walletRepository.deleteAll();
+                walletLedgerRepository.deleteAllInBatch();
+            }
+        }
         return ResponseEntity.ok().build(); //return status code 200
     }
     
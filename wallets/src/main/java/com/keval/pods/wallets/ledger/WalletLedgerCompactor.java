@@ -0,0 +1,46 @@
+package com.keval.pods.wallets.ledger;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.keval.pods.wallets.repository.WalletLedgerRepository;
+import com.keval.pods.wallets.repository.WalletPartitions;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+@CommonsLog
+@Component
+public class WalletLedgerCompactor {
+
+    @Autowired
+    private WalletLedgerRepository walletLedgerRepository;
+
+    @Autowired
+    private WalletPartitions walletPartitions;
+
+    //How long an idempotency key is remembered after its transaction was applied
+    @Value("${pods.wallets.ledger.retention}")
+    private Duration retention;
+
+    //Periodically compact the ledger so that it only covers the retention window
+    //The running balance lives in the wallet row, which acts as the checkpoint for everything compacted away
+    @Scheduled(fixedDelayString = "${pods.wallets.ledger.compaction-interval-ms}")
+    public void compact() {
+        Instant cutoff = Instant.now().minus(retention);
+
+        int removed = 0;
+        for (int partition = 0; partition < walletPartitions.count(); partition++) {
+            try (WalletPartitions.Route route = walletPartitions.use(partition)) {
+                removed += walletLedgerRepository.deleteOlderThan(cutoff);
+            }
+        }
+        if (removed > 0) {
+            log.debug("Compacted " + removed + " wallet ledger entries older than " + retention);
+        }
+    }
+}
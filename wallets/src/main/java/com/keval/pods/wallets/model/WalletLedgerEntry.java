@@ -0,0 +1,31 @@
+package com.keval.pods.wallets.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+@Entity  // Make a table in the database
+@Data // Lombok annotation to generate getters and setters
+@Table(name = "wallet_ledger", indexes = {
+    // Duplicate detection for retried transactions is a single index lookup
+    @Index(name = "idx_wallet_ledger_idempotency", columnList = "user_id, idempotency_key", unique = true),
+    // Compaction deletes by age
+    @Index(name = "idx_wallet_ledger_created_at", columnList = "created_at")
+})
+public class WalletLedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private Integer user_id;
+    private String idempotency_key; //Optional, supplied by the client through the Idempotency-Key header
+    private String action;
+    private Integer amount;
+    private Integer balance_after; //Balance returned for the original request, replayed for duplicates
+    private Instant created_at;
+}
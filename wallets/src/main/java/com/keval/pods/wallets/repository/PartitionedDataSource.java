@@ -0,0 +1,30 @@
+package com.keval.pods.wallets.repository;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+// DataSource that hands out connections from the partition selected through WalletPartitions
+// Calls made without a route (e.g. Hibernate bootstrap) go to the default partition 0
+public class PartitionedDataSource extends AbstractRoutingDataSource {
+
+    private final WalletPartitions walletPartitions;
+
+    public PartitionedDataSource(WalletPartitions walletPartitions) {
+        this.walletPartitions = walletPartitions;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return walletPartitions.current();
+    }
+
+    // Close the per-partition pools on shutdown
+    public void close() throws Exception {
+        for (DataSource partitionDataSource : getResolvedDataSources().values()) {
+            if (partitionDataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
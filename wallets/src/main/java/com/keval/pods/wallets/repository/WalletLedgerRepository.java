@@ -0,0 +1,33 @@
+package com.keval.pods.wallets.repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import com.keval.pods.wallets.model.WalletLedgerEntry;
+
+import jakarta.transaction.Transactional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface WalletLedgerRepository extends JpaRepository<WalletLedgerEntry, Long> {
+
+    //Lookup of an already applied transaction, backed by the (user_id, idempotency_key) unique index
+    @Query("SELECT e FROM WalletLedgerEntry e WHERE e.user_id = :user_id AND e.idempotency_key = :idempotency_key")
+    Optional<WalletLedgerEntry> findByIdempotencyKey(Integer user_id, String idempotency_key);
+
+    //DELETE /wallets/{userId}
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM WalletLedgerEntry WHERE user_id = :user_id")
+    void deleteByUserId(Integer user_id);
+
+    //Compaction: drop entries that have aged out of the idempotency window
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM WalletLedgerEntry WHERE created_at < :cutoff")
+    int deleteOlderThan(Instant cutoff);
+}
@@ -0,0 +1,56 @@
+package com.keval.pods.wallets.repository;
+
+// Maps wallets to partitions by user_id and holds the partition selected for the current thread
+// PartitionedDataSource reads the selection, so every repository call made while a route is open
+// lands on the H2 instance that owns the wallet
+public class WalletPartitions {
+
+    private final int count;
+    private final ThreadLocal<Integer> current = new ThreadLocal<>();
+
+    public WalletPartitions(int count) {
+        this.count = count;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    //Partition owning the wallet of user_id
+    public int partitionOf(Integer user_id) {
+        // Mix the bits (murmur3 finalizer) so that sequential user ids spread evenly
+        int h = user_id;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, count);
+    }
+
+    //Route repository calls on this thread to the partition owning the wallet of user_id
+    public Route route(Integer user_id) {
+        return use(partitionOf(user_id));
+    }
+
+    //Route repository calls on this thread to the given partition, used for operations spanning all wallets
+    public Route use(int partition) {
+        Integer previous = current.get();
+        current.set(partition);
+        return () -> {
+            if (previous == null) current.remove();
+            else current.set(previous);
+        };
+    }
+
+    //Partition selected for this thread, null if none
+    Integer current() {
+        return current.get();
+    }
+
+    // Closing a route restores the previous selection
+    public interface Route extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -1,10 +1,14 @@
 package com.keval.pods.wallets.repository;
 
+import java.util.Optional;
+
 import com.keval.pods.wallets.model.Wallet;
 
+import jakarta.persistence.LockModeType;
 import jakarta.transaction.Transactional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -16,6 +20,11 @@ public interface WalletRepository extends JpaRepository<Wallet, Integer> {
     @Query("SELECT w.balance FROM Wallet w WHERE w.user_id = :user_id")
     Integer getBalance(Integer user_id);
 
+    //Row lock taken before applying a transaction, serializes concurrent updates and retries of one wallet
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM Wallet w WHERE w.user_id = :user_id")
+    Optional<Wallet> findByIdForUpdate(Integer user_id);
+
     //POST /wallets/{userId} --will be done in controller, using save method           
 
     //PUT /wallets/{userId}             
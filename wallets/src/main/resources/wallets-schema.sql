@@ -0,0 +1,18 @@
+-- Schema applied to every wallet partition, mirrors the JPA entities in com.keval.pods.wallets.model
+CREATE TABLE IF NOT EXISTS wallet (
+    user_id INTEGER NOT NULL PRIMARY KEY,
+    balance INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS wallet_ledger (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id INTEGER,
+    idempotency_key VARCHAR(255),
+    action VARCHAR(255),
+    amount INTEGER,
+    balance_after INTEGER,
+    created_at TIMESTAMP(6) WITH TIME ZONE
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_wallet_ledger_idempotency ON wallet_ledger (user_id, idempotency_key);
+CREATE INDEX IF NOT EXISTS idx_wallet_ledger_created_at ON wallet_ledger (created_at);
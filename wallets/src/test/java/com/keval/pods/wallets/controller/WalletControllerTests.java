@@ -0,0 +1,61 @@
+package com.keval.pods.wallets.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.keval.pods.wallets.repository.WalletLedgerRepository;
+import com.keval.pods.wallets.repository.WalletPartitions;
+import com.keval.pods.wallets.repository.WalletRepository;
+
+@SpringBootTest(properties = {
+	"pods.wallets.partitions=4",
+	"pods.wallets.partition-url=jdbc:h2:mem:wallet-controller-tests%d;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureMockMvc
+class WalletControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private WalletPartitions walletPartitions;
+
+	@Autowired
+	private WalletRepository walletRepository;
+
+	@Autowired
+	private WalletLedgerRepository walletLedgerRepository;
+
+	@Test
+	void deleteAllWalletsEmptiesEveryPartition() throws Exception {
+		for (int user_id = 1; user_id <= 8; user_id++) {
+			mockMvc.perform(put("/wallets/" + user_id)
+					.contentType(MediaType.APPLICATION_JSON)
+					.content("{\"action\": \"credit\", \"amount\": 100}"))
+				.andExpect(status().isOk());
+		}
+
+		mockMvc.perform(delete("/wallets")).andExpect(status().isOk());
+
+		for (int user_id = 1; user_id <= 8; user_id++) {
+			mockMvc.perform(get("/wallets/" + user_id)).andExpect(status().isNotFound());
+		}
+		for (int partition = 0; partition < walletPartitions.count(); partition++) {
+			try (WalletPartitions.Route route = walletPartitions.use(partition)) {
+				assertThat(walletRepository.count()).as("wallets in partition %d", partition).isZero();
+				assertThat(walletLedgerRepository.count()).as("ledger entries in partition %d", partition).isZero();
+			}
+		}
+	}
+
+}